@@ -0,0 +1,53 @@
+package com.jsonyao.rapid.rpc.client;
+
+import lombok.Data;
+
+/**
+ * 基于Netty实现RPC框架: 熔断与异常节点摘除配置, 属于连接级配置
+ */
+@Data
+public class CircuitBreakerOptions {
+
+    /**
+     * 是否启用: 关闭后只统计不摘除
+     */
+    private boolean enabled = true;
+
+    /**
+     * 滑动窗口长度(毫秒)及桶数
+     */
+    private long windowMillis = 10000;
+    private int windowBuckets = 10;
+
+    /**
+     * 窗口内的请求数达到该值才做判断, 避免少量样本误判
+     */
+    private int minRequests = 20;
+
+    /**
+     * 窗口内的失败率达到该值时熔断: 失败包括超时和Server端返回的异常
+     */
+    private double errorRateThreshold = 0.5;
+
+    /**
+     * 熔断时长(毫秒): 连续熔断时按次数线性增加, 不超过maxEjectionMillis
+     */
+    private long ejectionMillis = 5000;
+    private long maxEjectionMillis = 60000;
+
+    /**
+     * 平均延迟超过同一服务其他地址中位数的倍数时摘除, 0代表不按延迟摘除
+     */
+    private double slowRatio = 5;
+
+    /**
+     * 同一服务最多摘除的地址比例(百分比): 只约束按延迟摘除
+     */
+    private int maxEjectionPercent = 50;
+
+    /**
+     * 按延迟检测异常节点的间隔(毫秒)
+     */
+    private long detectionIntervalMillis = 1000;
+
+}
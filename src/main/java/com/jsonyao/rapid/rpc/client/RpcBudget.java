@@ -0,0 +1,51 @@
+package com.jsonyao.rapid.rpc.client;
+
+import com.jsonyao.rapid.rpc.utils.RollingWindow;
+
+/**
+ * 基于Netty实现RPC框架: 额外请求(对冲、重试)的预算, 每个Client一个
+ *      1. 滑动窗口内的额外请求数不超过正常请求数的percent%, 再加上固定的minPerWindow, 请求量很小时也能使用
+ *      2. 故障期间所有请求都变慢或者失败时, 额外请求被预算限制住, 不会把下游的负载放大数倍
+ *      3. 复用RollingWindow: 正常请求记为成功, 额外请求记为失败, 不需要额外的锁
+ */
+public class RpcBudget {
+
+    private final RollingWindow window;
+
+    private final double ratio;
+
+    private final int minPerWindow;
+
+    /**
+     * @param percent 额外请求占正常请求的最大百分比
+     * @param minPerWindow 窗口内始终允许的额外请求数
+     * @param windowMillis 窗口长度(毫秒)
+     */
+    public RpcBudget(int percent, int minPerWindow, long windowMillis) {
+        this.window = new RollingWindow(windowMillis, 10);
+        this.ratio = percent / 100.0;
+        this.minPerWindow = minPerWindow;
+    }
+
+    /**
+     * 记录一次正常请求: 每次调用都会执行, 只有一次LongAdder自增
+     */
+    public void deposit() {
+        window.record(false, 0);
+    }
+
+    /**
+     * 尝试占用一个额外请求的名额: 并发时可能略微超出, 对预算的效果没有影响
+     * @return 预算不足时返回false
+     */
+    public boolean tryAcquire() {
+        RollingWindow.Stats stats = window.stats();
+        long extra = stats.getErrors();
+        long normal = stats.getRequests() - extra;
+        if(extra + 1 > normal * ratio + minPerWindow) {
+            return false;
+        }
+        window.record(true, 0);
+        return true;
+    }
+}
@@ -0,0 +1,193 @@
+package com.jsonyao.rapid.rpc.client;
+
+import com.jsonyao.rapid.rpc.utils.RollingWindow;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 基于Netty实现RPC框架: 每个连接一个的熔断器
+ *      1. CLOSED: 正常选择, 滑动窗口内的失败率超过阈值时熔断, 也可以由连接管理器按延迟摘除
+ *      2. OPEN: 不参与选择, 熔断时长到期后由时间轮转为HALF_OPEN
+ *      3. HALF_OPEN: 只放行一个探测请求, 成功则恢复为CLOSED并清空窗口, 失败则重新熔断且熔断时长增加
+ *      状态变化时通知监听器, 由连接管理器重新发布可用地址快照, 选择连接时不需要再检查时间
+ */
+@Slf4j
+public class RpcCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final CircuitBreakerOptions options;
+
+    /**
+     * 熔断到期后转为HALF_OPEN的时间轮: 与请求超时共用
+     */
+    private final Timer timer;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    /**
+     * HALF_OPEN时是否已经放行了探测请求
+     */
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    /**
+     * 连续熔断次数: 探测成功后清零
+     */
+    private final AtomicInteger ejections = new AtomicInteger();
+
+    /**
+     * 滑动窗口: 恢复为CLOSED时整体替换, 熔断前的样本不再计入
+     */
+    private volatile RollingWindow window;
+
+    /**
+     * 熔断器所在的连接: 用于日志
+     */
+    private volatile Object remotePeer;
+
+    private volatile Runnable listener;
+
+    public RpcCircuitBreaker(CircuitBreakerOptions options, Timer timer) {
+        this.options = options;
+        this.timer = timer;
+        this.window = new RollingWindow(options.getWindowMillis(), options.getWindowBuckets());
+    }
+
+    void setRemotePeer(Object remotePeer) {
+        this.remotePeer = remotePeer;
+    }
+
+    /**
+     * 状态变化监听器: 由连接所在的连接池设置
+     * @param listener
+     */
+    void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * 是否可以参与选择: HALF_OPEN时探测请求还没完成前不再放行
+     * @return
+     */
+    public boolean isAvailable() {
+        State current = state.get();
+        return current == State.CLOSED || (current == State.HALF_OPEN && !probing.get());
+    }
+
+    /**
+     * 连接被选中: HALF_OPEN时用CAS占用探测名额, 并发选择时只有一个请求成为探测请求
+     * @return 没有占到探测名额(或者已经熔断)时返回false, 调用方应当视为不可用
+     */
+    boolean acquire() {
+        State current = state.get();
+        if(current == State.CLOSED) {
+            return true;
+        }
+        return current == State.HALF_OPEN && probing.compareAndSet(false, true);
+    }
+
+    public RollingWindow.Stats getStats() {
+        return window.stats();
+    }
+
+    /**
+     * 记录一次成功的调用
+     * @param latencyNanos
+     */
+    public void onSuccess(long latencyNanos) {
+        window.record(false, latencyNanos);
+        if(state.get() == State.HALF_OPEN && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            window = new RollingWindow(options.getWindowMillis(), options.getWindowBuckets());
+            ejections.set(0);
+            probing.set(false);
+            log.info("circuit breaker closed, remotePeer: " + remotePeer);
+            fireStateChanged();
+        }
+    }
+
+    /**
+     * 记录一次失败的调用: 超时或者Server端返回异常
+     * @param latencyNanos
+     */
+    public void onError(long latencyNanos) {
+        RollingWindow current = window;
+        current.record(true, latencyNanos);
+        if(!options.isEnabled()) {
+            return;
+        }
+        State s = state.get();
+        if(s == State.HALF_OPEN) {
+            open(State.HALF_OPEN, "probe failed");
+            return;
+        }
+        if(s == State.CLOSED) {
+            RollingWindow.Stats stats = current.stats();
+            if(stats.getRequests() >= options.getMinRequests() && stats.getErrorRate() >= options.getErrorRateThreshold()) {
+                open(State.CLOSED, "error rate too high, " + stats);
+            }
+        }
+    }
+
+    /**
+     * 记录一次被取消的调用: 不计入失败
+     *      HALF_OPEN时交还探测名额, 否则熔断器会一直等待一个不会到来的响应
+     * @param latencyNanos 已经等待的时间, 只是延迟的下界, 不大于0时不计入窗口
+     */
+    void onCancelled(long latencyNanos) {
+        if(latencyNanos > 0) {
+            window.record(false, latencyNanos);
+        }
+        if(state.get() == State.HALF_OPEN) {
+            probing.set(false);
+        }
+    }
+
+    /**
+     * 摘除: 由连接管理器按延迟检测时调用
+     * @param reason
+     * @return 是否由CLOSED转为OPEN
+     */
+    boolean eject(String reason) {
+        return options.isEnabled() && open(State.CLOSED, reason);
+    }
+
+    private boolean open(State from, String reason) {
+        if(!state.compareAndSet(from, State.OPEN)) {
+            return false;
+        }
+        probing.set(false);
+        long millis = Math.min(options.getEjectionMillis() * ejections.incrementAndGet(), options.getMaxEjectionMillis());
+        log.warn("circuit breaker opened for " + millis + "ms, remotePeer: " + remotePeer + ", reason: " + reason);
+        timer.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) throws Exception {
+                if(state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                    log.info("circuit breaker half open, remotePeer: " + remotePeer);
+                    fireStateChanged();
+                }
+            }
+        }, millis, TimeUnit.MILLISECONDS);
+        fireStateChanged();
+        return true;
+    }
+
+    private void fireStateChanged() {
+        Runnable current = listener;
+        if(current != null) {
+            current.run();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.jsonyao.rapid.rpc.client;
 
 import com.jsonyao.rapid.rpc.client.proxy.RpcAsyncProxy;
 import com.jsonyao.rapid.rpc.client.proxy.RpcProxyImpl;
+import com.jsonyao.rapid.rpc.transport.RpcWriteMetrics;
 
 import java.lang.reflect.Proxy;
 import java.util.List;
@@ -22,6 +23,11 @@ public class RpcClient {
 
     private RpcConnectManager rpcConnectManager;
 
+    /**
+     * Client端可选配置: 需要在initClient之前设置
+     */
+    private RpcClientOptions options = new RpcClientOptions();
+
     public RpcClient() {
 
     }
@@ -29,6 +35,7 @@ public class RpcClient {
     public void initClient(String serverAddress, long timeout) {
         this.serverAddress = serverAddress;
         this.timeout = timeout;
+        this.rpcConnectManager = new RpcConnectManager(options);
         this.connect();
     }
 
@@ -44,7 +51,7 @@ public class RpcClient {
     public <T> T initClient(List<String> serverAddress, long timeout, Class<T> interfaceClass) {
         this.serverAddressList = serverAddress;
         this.timeout = timeout;
-        this.rpcConnectManager = new RpcConnectManager();
+        this.rpcConnectManager = new RpcConnectManager(options);
         this.rpcConnectManager.connect(this.serverAddressList);
 
         // init时生成RPC同步代理对象: JDK动态代理
@@ -58,10 +65,34 @@ public class RpcClient {
     public RpcClient(String serverAddress, long timeout) {
         this.serverAddress = serverAddress;
         this.timeout = timeout;
-        this.rpcConnectManager = new RpcConnectManager();
+        this.rpcConnectManager = new RpcConnectManager(options);
         this.connect();
     }
 
+    public RpcClientOptions getOptions() {
+        return options;
+    }
+
+    public void setOptions(RpcClientOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * 写出统计: 可以获取每次flush合并的请求数
+     * @return
+     */
+    public RpcWriteMetrics getWriteMetrics() {
+        return rpcConnectManager.getWriteMetrics();
+    }
+
+    /**
+     * 请求统计: 可以获取取消的请求数
+     * @return
+     */
+    public RpcClientMetrics getClientMetrics() {
+        return rpcConnectManager.getClientMetrics();
+    }
+
     private void connect() {
         rpcConnectManager.connect(serverAddress);
     }
@@ -82,7 +113,27 @@ public class RpcClient {
         this.rpcConnectManager.updateConnectedServer(serverAddressList);
     }
 
-    private void stop() {
+    /**
+     * 增量添加服务地址或者更新权重: 只影响该地址的连接
+     * @param serverAddress
+     * @param weight
+     */
+    public void addServer(String serverAddress, int weight) {
+        this.rpcConnectManager.addServer(serverAddress, weight);
+    }
+
+    /**
+     * 增量移除服务地址: 只关闭该地址上的连接
+     * @param serverAddress
+     */
+    public void removeServer(String serverAddress) {
+        this.rpcConnectManager.removeServer(serverAddress);
+    }
+
+    /**
+     * 关闭客户端: 释放共享的连接和线程组, 最后一个引用它们的客户端关闭时才真正关闭
+     */
+    public void stop() {
         rpcConnectManager.stop();
     }
 
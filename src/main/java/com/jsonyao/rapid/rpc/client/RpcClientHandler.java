@@ -1,21 +1,40 @@
 package com.jsonyao.rapid.rpc.client;
 
+import com.jsonyao.rapid.rpc.codec.RpcFrame;
+import com.jsonyao.rapid.rpc.codec.RpcHandshake;
+import com.jsonyao.rapid.rpc.codec.RpcMessage;
+import com.jsonyao.rapid.rpc.codec.RpcProtocol;
 import com.jsonyao.rapid.rpc.codec.RpcRequest;
 import com.jsonyao.rapid.rpc.codec.RpcResponse;
+import com.jsonyao.rapid.rpc.transport.RpcWriteMetrics;
+import com.jsonyao.rapid.rpc.transport.RpcWriteQueue;
+import com.jsonyao.rapid.rpc.utils.Ewma;
+import com.jsonyao.rapid.rpc.utils.StripedLongObjectMap;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 基于Netty实现RPC框架: Client业务处理器
  */
-public class RpcClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
+public class RpcClientHandler extends SimpleChannelInboundHandler<RpcFrame> {
 
     /**
      * 缓存remotePeer: 通道连接的远端地址
@@ -30,14 +49,66 @@ public class RpcClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
     }
 
     /**
-     * requestId-rpcFuture
+     * 所有连接共享的超时时间轮: 到期的请求从未完成请求表中移除, 并以超时异常失败
      */
-    private Map<String, RpcFuture> pendingRpcTable = new ConcurrentHashMap<>();
+    private static final Timer TIMEOUT_TIMER = new HashedWheelTimer(new DefaultThreadFactory("rapid-rpc-timeout", true), 10, TimeUnit.MILLISECONDS, 512);
+    public static Timer timer() {
+        return TIMEOUT_TIMER;
+    }
+
+    /**
+     * requestId-rpcFuture: 每个连接一张, 主键是原始long, 不需要装箱
+     */
+    private final StripedLongObjectMap<RpcFuture> pendingRpcTable = new StripedLongObjectMap<>();
+
+    /**
+     * 请求ID生成器: 每个连接单调递增, 只需要在本连接内唯一, 0保留给握手请求
+     */
+    private final AtomicLong requestIdGenerator = new AtomicLong();
+
+    /**
+     * 响应延迟的EWMA(纳秒): 超时按超时时间计入, 供负载均衡使用
+     */
+    private final Ewma latency = new Ewma(TimeUnit.SECONDS.toNanos(10));
+
+    /**
+     * 熔断器: 按滑动窗口内的失败率熔断, 也可以被连接管理器按延迟摘除
+     */
+    private final RpcCircuitBreaker circuitBreaker;
+
+    /**
+     * Client端可选配置: 连接共享时是第一个引用该地址的Client的配置, 回调线程池等只作为默认值
+     */
+    private final RpcClientOptions options;
+
+    /**
+     * 合并写出队列: 调用方线程发送的请求在EventLoop上批量flush
+     */
+    private final RpcWriteMetrics writeMetrics;
+    private RpcWriteQueue writeQueue;
+
+    /**
+     * 连接池内所有连接共享的请求统计
+     */
+    private final RpcClientMetrics clientMetrics;
+
+    public RpcClientHandler(RpcClientOptions options, RpcWriteMetrics writeMetrics, RpcClientMetrics clientMetrics) {
+        this.options = options;
+        this.writeMetrics = writeMetrics;
+        this.clientMetrics = clientMetrics;
+        this.circuitBreaker = new RpcCircuitBreaker(options.getCircuitBreaker(), TIMEOUT_TIMER);
+    }
+
+    /**
+     * 握手得到的方法字典: methodKey-methodId => 握手完成前为空, 请求回退到字符串形式
+     */
+    private volatile Map<String, Integer> methodIds = Collections.emptyMap();
 
     @Override
     public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
         super.channelRegistered(ctx);
         this.channel = ctx.channel();
+        this.writeQueue = new RpcWriteQueue(channel, options.isWriteCoalescing(), options.getMaxWriteBatch(), writeMetrics);
         // 1、执行顺序: 通道激活时才知道通道连接的远端地址 => 此时获取远端地址为空
 //        this.remotePeer = this.channel.remoteAddress();
     }
@@ -47,34 +118,233 @@ public class RpcClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
         super.channelActive(ctx);
         // 3、执行顺序: 通道激活时才知道通道连接的远端地址 => 此时获取远端地址不为空
         this.remotePeer = this.channel.remoteAddress();
+        this.circuitBreaker.setRemotePeer(remotePeer);
+
+        // 发起握手, 获取Server端的方法字典
+        ctx.writeAndFlush(new RpcMessage(RpcProtocol.TYPE_HANDSHAKE, 0, null));
+    }
+
+    /**
+     * 连接关闭: 所有未完成的请求立即失败, 而不是等到超时
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        super.channelInactive(ctx);
+        failAll(new RpcException("connection closed, remotePeer: " + remotePeer));
     }
 
     /**
-     * 服务端响应时, 客户端读取Buffer数据: 已经被自定义解码器解码成RpcResponse了
+     * 服务端响应时, 客户端读取Buffer数据: 已经被自定义解码器解析出协议头了, 根据协议头路由, 只有找到对应的Future时才反序列化包体
      * @param ctx
-     * @param rpcResponse
+     * @param frame
      * @throws Exception
      */
-    protected void channelRead0(ChannelHandlerContext ctx, RpcResponse rpcResponse) throws Exception {
-        String requestId = rpcResponse.getRequestId();
-        RpcFuture rpcFuture = pendingRpcTable.get(requestId);
+    protected void channelRead0(ChannelHandlerContext ctx, RpcFrame frame) throws Exception {
+        if(frame.getType() == RpcProtocol.TYPE_HANDSHAKE) {
+            handshake(frame.decodeBody(RpcHandshake.class));
+            return;
+        }
+        if(frame.getType() != RpcProtocol.TYPE_RESPONSE) {
+            return;
+        }
+        long requestId = frame.getRequestId();
+        RpcFuture rpcFuture = pendingRpcTable.remove(requestId);
         if(rpcFuture != null) {
-            pendingRpcTable.remove(requestId);
+            long latencyNanos = System.nanoTime() - rpcFuture.getStartNanos();
+            // 服务端过载: 请求没有执行, 包体为空; 很快返回的拒绝不计入延迟, 否则负载均衡会更偏向过载的地址
+            if(frame.getStatus() == RpcProtocol.STATUS_OVERLOADED) {
+                circuitBreaker.onError(latencyNanos);
+                rpcFuture.fail(new RpcOverloadedException("rpc server is overloaded, requestId: " + requestId + ", remotePeer: " + remotePeer));
+                return;
+            }
+            latency.update(latencyNanos);
+            // Server端返回的异常也计入失败率: 业务异常对所有地址一视同仁, 可以通过失败率阈值调节
+            if(frame.getStatus() == RpcProtocol.STATUS_OK) {
+                circuitBreaker.onSuccess(latencyNanos);
+            } else {
+                circuitBreaker.onError(latencyNanos);
+            }
+            RpcResponse rpcResponse = frame.decodeBody(RpcResponse.class);
+            rpcResponse.setRequestId(requestId);
             rpcFuture.done(rpcResponse);
         }
     }
 
     /**
-     * 异步发送请求: Future模型: 可以支持Future#get方法, 通过其他线程获取返回结果
+     * 握手完成: 发布方法字典, 之后的请求只需要携带methodId
+     * @param handshake
+     */
+    private void handshake(RpcHandshake handshake) {
+        List<String> methodKeys = handshake.getMethodKeys();
+        if(methodKeys == null) {
+            return;
+        }
+        Map<String, Integer> methodIds = new HashMap<>(methodKeys.size() * 2);
+        for (int i = 0; i < methodKeys.size(); i++) {
+            methodIds.put(methodKeys.get(i), i + 1);
+        }
+        this.methodIds = methodIds;
+    }
+
+    /**
+     * 异步发送请求: 使用默认的请求超时时间
      * @return
      */
     public RpcFuture sendRequest(RpcRequest request) {
-        RpcFuture rpcFuture = new RpcFuture(request);
-        pendingRpcTable.put(request.getRequestId(), rpcFuture);
-        channel.writeAndFlush(request);
+        return sendRequest(request, options.getRequestTimeoutMillis());
+    }
+
+    /**
+     * 异步发送请求: 使用默认的回调线程池
+     * @param request
+     * @param timeoutMillis 超时时间(毫秒), 到期后Future以RpcTimeoutException失败
+     * @return
+     */
+    public RpcFuture sendRequest(RpcRequest request, long timeoutMillis) {
+        return sendRequest(request, timeoutMillis, options.getCallbackExecutor());
+    }
+
+    /**
+     * 异步发送请求: Future模型: 可以支持Future#get方法, 通过其他线程获取返回结果
+     *      请求ID在这里按连接分配, 调用方不需要设置
+     *      连接在多个服务之间共享, 回调线程池由发起请求的服务指定
+     * @param request
+     * @param timeoutMillis 超时时间(毫秒), 到期后Future以RpcTimeoutException失败
+     * @param callbackExecutor RpcFuture回调的执行线程池
+     * @return
+     */
+    public RpcFuture sendRequest(RpcRequest request, long timeoutMillis, Executor callbackExecutor) {
+        final long requestId = requestIdGenerator.incrementAndGet();
+        request.setRequestId(requestId);
+        request.setTimeoutMillis(timeoutMillis);
+        final RpcFuture rpcFuture = new RpcFuture(request, callbackExecutor);
+        rpcFuture.setHandler(this);
+        pendingRpcTable.put(requestId, rpcFuture);
+        rpcFuture.setTimeout(TIMEOUT_TIMER.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) throws Exception {
+                RpcFuture expired = pendingRpcTable.remove(requestId);
+                if(expired != null) {
+                    latency.update(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+                    circuitBreaker.onError(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+                    expired.fail(new RpcTimeoutException("timeout exception requestId: " + requestId
+                                                            + ", className: " + expired.getRequest().getClassName()
+                                                            + ", methodName: " + expired.getRequest().getMethodName()
+                                                            + ", remotePeer: " + remotePeer
+                                                            + ", timeout: " + timeoutMillis + "ms"));
+                    // 调用方已经放弃: 通知Server端不再执行
+                    sendCancel(requestId, true);
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS));
+
+        // 连接已经关闭: channelInactive可能已经清理过未完成请求表, 这里直接失败
+        if(!channel.isActive()) {
+            failRequest(requestId, new RpcException("connection closed, remotePeer: " + remotePeer));
+            return rpcFuture;
+        }
+
+        // 方法字典中存在的方法只发送精简请求, 否则回退到字符串形式
+        RpcRequest wireRequest = request;
+        Integer methodId = request.getMethodKey() == null ? null : methodIds.get(request.getMethodKey());
+        if(methodId != null) {
+            wireRequest = request.compact(methodId);
+        }
+        writeQueue.write(new RpcMessage(RpcProtocol.TYPE_REQUEST, requestId, wireRequest)).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if(!future.isSuccess()) {
+                    circuitBreaker.onError(0);
+                    failRequest(requestId, new RpcException("send request failed, requestId: " + requestId, future.cause()));
+                }
+            }
+        });
         return rpcFuture;
     }
 
+    /**
+     * 取消请求: 由RpcFuture#cancel调用, 此时Future已经完成
+     *      被取消请求的耗时只是延迟的下界: 超过平均延迟时才计入, 对冲落败的慢连接仍然能被负载均衡和延迟摘除发现
+     * @param requestId
+     * @param mayInterruptIfRunning 是否允许Server端中断执行中的请求
+     */
+    void cancelRequest(long requestId, boolean mayInterruptIfRunning) {
+        RpcFuture cancelled = pendingRpcTable.remove(requestId);
+        if(cancelled == null) {
+            // 已经响应、超时或者失败
+            return;
+        }
+        clientMetrics.recordCancelled();
+        long elapsedNanos = System.nanoTime() - cancelled.getStartNanos();
+        boolean slow = elapsedNanos > latency.get();
+        if(slow) {
+            latency.update(elapsedNanos);
+        }
+        circuitBreaker.onCancelled(slow ? elapsedNanos : 0);
+        sendCancel(requestId, mayInterruptIfRunning);
+    }
+
+    /**
+     * 发送取消帧: 只有协议头, 写出失败时不需要处理, Server端最多多执行一次
+     * @param requestId
+     * @param mayInterruptIfRunning
+     */
+    private void sendCancel(long requestId, boolean mayInterruptIfRunning) {
+        if(!options.isCancelPropagation() || !isActive()) {
+            return;
+        }
+        clientMetrics.recordCancelFrame();
+        byte status = mayInterruptIfRunning ? RpcProtocol.CANCEL_MAY_INTERRUPT : RpcProtocol.STATUS_OK;
+        writeQueue.write(new RpcMessage(RpcProtocol.TYPE_CANCEL, status, requestId, null));
+    }
+
+    /**
+     * 连接是否可用
+     * @return
+     */
+    public boolean isActive() {
+        return channel != null && channel.isActive();
+    }
+
+    /**
+     * 响应延迟的EWMA(纳秒)
+     * @return 没有样本时为0
+     */
+    public double getLatencyEwma() {
+        return latency.get();
+    }
+
+    /**
+     * 熔断器: 连接所在的连接池据此决定是否参与选择
+     * @return
+     */
+    public RpcCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 当前连接上未完成的请求数
+     * @return
+     */
+    public int getPendingCount() {
+        return pendingRpcTable.size();
+    }
+
+    private void failRequest(long requestId, Throwable cause) {
+        RpcFuture rpcFuture = pendingRpcTable.remove(requestId);
+        if(rpcFuture != null) {
+            rpcFuture.fail(cause);
+        }
+    }
+
+    private void failAll(Throwable cause) {
+        for (RpcFuture rpcFuture : pendingRpcTable.removeAll()) {
+            rpcFuture.fail(cause);
+        }
+    }
+
     /**
      * Netty提供了一种主动关闭连接发的方式: 发送一个Unpooled.EMPTY_BUFFER, 这样ChannelFutureListener的Close事件就会监听到并关闭通道
      */
@@ -2,28 +2,48 @@ package com.jsonyao.rapid.rpc.client;
 
 import com.jsonyao.rapid.rpc.codec.RpcDecoder;
 import com.jsonyao.rapid.rpc.codec.RpcEncoder;
-import com.jsonyao.rapid.rpc.codec.RpcRequest;
-import com.jsonyao.rapid.rpc.codec.RpcResponse;
+import com.jsonyao.rapid.rpc.codec.RpcProtocol;
+import com.jsonyao.rapid.rpc.transport.RpcHeartbeatHandler;
+import com.jsonyao.rapid.rpc.transport.RpcWriteMetrics;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * 基于Netty实现RPC框架: 自定义Channel初始化器
  */
 public class RpcClientInitializer extends ChannelInitializer<SocketChannel> {
 
+    private final RpcClientOptions options;
+    private final RpcWriteMetrics writeMetrics;
+    private final RpcClientMetrics clientMetrics;
+
+    public RpcClientInitializer(RpcClientOptions options, RpcWriteMetrics writeMetrics, RpcClientMetrics clientMetrics) {
+        this.options = options;
+        this.writeMetrics = writeMetrics;
+        this.clientMetrics = clientMetrics;
+    }
+
     protected void initChannel(SocketChannel ch) throws Exception {
         ChannelPipeline pipeline = ch.pipeline();
 
-        // 编解码的handler => Client端是对RpcRequest编码, 对RpcResponse解码
-        pipeline.addLast(new RpcEncoder(RpcRequest.class));
-        // 定义Netty数据包解析规则: 最大数据包大小、数据包起始位置、数据包包头长度
-        pipeline.addLast(new LengthFieldBasedFrameDecoder(65536, 0, 4, 0, 0));
-        pipeline.addLast(new RpcDecoder(RpcResponse.class));
+        // 编解码的handler => Client端是对RpcRequest编码, 对RpcResponse只解析协议头, 包体交给rpcClientHandler按需反序列化
+        pipeline.addLast(new RpcEncoder());
+        // 定义Netty数据包解析规则: 最大数据包大小、包体长度字段偏移量、包体长度字段长度
+        pipeline.addLast(new LengthFieldBasedFrameDecoder(RpcProtocol.MAX_FRAME_LENGTH, RpcProtocol.LENGTH_FIELD_OFFSET, RpcProtocol.LENGTH_FIELD_LENGTH, 0, 0));
+        pipeline.addLast(new RpcDecoder());
+
+        // 心跳: 读空闲时发送心跳, 连续丢失达到阈值时关闭连接
+        if(options.getHeartbeatIntervalMillis() > 0) {
+            pipeline.addLast(new IdleStateHandler(options.getHeartbeatIntervalMillis(), 0, 0, TimeUnit.MILLISECONDS));
+            pipeline.addLast(new RpcHeartbeatHandler(true, options.getHeartbeatMissThreshold()));
+        }
 
         // 实际业务处理器rpcClientHandler
-        pipeline.addLast(new RpcClientHandler());
+        pipeline.addLast(new RpcClientHandler(options, writeMetrics, clientMetrics));
     }
 }
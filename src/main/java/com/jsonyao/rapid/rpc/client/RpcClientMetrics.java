@@ -0,0 +1,40 @@
+package com.jsonyao.rapid.rpc.client;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于Netty实现RPC框架: Client端请求统计, 连接池内所有连接共享
+ *      cancelled: 响应到达前被调用方(或者集群容错策略)取消的请求数
+ *      cancelFrames: 发送给Server端的取消帧数, 包括超时的请求
+ */
+public class RpcClientMetrics {
+
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder cancelFrames = new LongAdder();
+
+    void recordCancelled() {
+        cancelled.increment();
+    }
+
+    void recordCancelFrame() {
+        cancelFrames.increment();
+    }
+
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    public long getCancelFrames() {
+        return cancelFrames.sum();
+    }
+
+    public void reset() {
+        cancelled.reset();
+        cancelFrames.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "RpcClientMetrics{cancelled=" + getCancelled() + ", cancelFrames=" + getCancelFrames() + "}";
+    }
+}
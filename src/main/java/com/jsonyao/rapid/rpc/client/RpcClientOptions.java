@@ -0,0 +1,116 @@
+package com.jsonyao.rapid.rpc.client;
+
+import com.jsonyao.rapid.rpc.client.cluster.ClusterType;
+import com.jsonyao.rapid.rpc.client.loadbalance.LoadBalanceType;
+import com.jsonyao.rapid.rpc.client.loadbalance.LoadBalancer;
+import com.jsonyao.rapid.rpc.config.consumer.MethodConfig;
+import lombok.Data;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * 基于Netty实现RPC框架: Client端可选配置
+ */
+@Data
+public class RpcClientOptions {
+
+    /**
+     * RpcFuture回调的执行线程池: 默认共享线程池, RpcFuture.DIRECT_EXECUTOR代表直接在IO线程上执行
+     */
+    private Executor callbackExecutor = RpcFuture.DEFAULT_CALLBACK_EXECUTOR;
+
+    /**
+     * 没有显式指定超时时间的请求的默认超时时间(毫秒)
+     */
+    private long requestTimeoutMillis = 3000;
+
+    /**
+     * 每个服务提供者地址建立的连接数: 多个连接分摊到不同的EventLoop线程上, 避免大响应阻塞其他请求
+     */
+    private int connectionsPerEndpoint = 1;
+
+    /**
+     * 负载均衡策略
+     */
+    private LoadBalanceType loadBalance = LoadBalanceType.LEAST_ACTIVE;
+
+    /**
+     * 自定义负载均衡器: 不为空时忽略loadBalance, 注意有状态的实现不能在多个Client之间共享
+     */
+    private LoadBalancer loadBalancer;
+
+    /**
+     * 一致性哈希时作为哈希键的参数下标
+     */
+    private int hashArgument = 0;
+
+    /**
+     * 方法名-方法级配置: 覆盖上面的接口级配置
+     */
+    private Map<String, MethodConfig> methods = Collections.emptyMap();
+
+    /**
+     * 是否合并写出: 多个线程并发写出的数据包在EventLoop上批量write, 一次flush
+     */
+    private boolean writeCoalescing = true;
+
+    /**
+     * 合并写出时单次flush的最大数据包数
+     */
+    private int maxWriteBatch = 128;
+
+    /**
+     * 心跳间隔(毫秒): 连接读空闲这么久时发送一次心跳, 0代表不发送心跳也不检测空闲
+     */
+    private long heartbeatIntervalMillis = 5000;
+
+    /**
+     * 连续丢失的心跳数达到该值时主动关闭连接, 未完成的请求立即失败, 连接移出选择范围并重连
+     */
+    private int heartbeatMissThreshold = 3;
+
+    /**
+     * 熔断与异常节点摘除配置
+     */
+    private CircuitBreakerOptions circuitBreaker = new CircuitBreakerOptions();
+
+    /**
+     * 集群容错策略: 默认快速失败
+     */
+    private ClusterType cluster = ClusterType.FAILFAST;
+
+    /**
+     * 失败转移时的最大重试次数
+     */
+    private int retries = 2;
+
+    /**
+     * 并行调用的地址数
+     */
+    private int forks = 2;
+
+    /**
+     * 对冲前的等待时间(毫秒), 0代表使用方法最近的p95延迟
+     */
+    private long hedgingDelayMillis = 0;
+
+    /**
+     * 额外请求(重试、并行、对冲)预算: 最近10秒内额外请求数不超过正常请求数的retryBudgetPercent%, 再加上retryBudgetMin
+     */
+    private int retryBudgetPercent = 10;
+    private int retryBudgetMin = 10;
+
+    /**
+     * 快速失败时, 服务端返回过载(请求没有执行)后是否立即换一个地址重试一次: 同样需要从预算中申请
+     */
+    private boolean retryOnOverloaded = true;
+
+    /**
+     * 请求被取消或者超时时是否向Server端发送取消帧: Server端跳过还在排队的请求, 不再写回没有人读取的响应
+     *      连接级配置: 取值不同的Client不共用连接
+     */
+    private boolean cancelPropagation = true;
+
+}
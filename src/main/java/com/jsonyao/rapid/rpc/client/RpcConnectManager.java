@@ -1,12 +1,12 @@
 package com.jsonyao.rapid.rpc.client;
 
-import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelFutureListener;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import com.jsonyao.rapid.rpc.client.cluster.ClusterInvoker;
+import com.jsonyao.rapid.rpc.client.loadbalance.LoadBalancer;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+import com.jsonyao.rapid.rpc.config.consumer.MethodConfig;
+import com.jsonyao.rapid.rpc.transport.RpcContext;
+import com.jsonyao.rapid.rpc.transport.RpcWriteMetrics;
+import com.jsonyao.rapid.rpc.utils.RollingWindow;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.CollectionUtils;
 
@@ -14,12 +14,13 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * 基于Netty实现RPC框架: 连接管理器: 解析地址、建立连接、添加连接缓存、失败监听(清除失败连接资源、失败重连)、成功监听、释放所有连接资源、取模方式轮训选择业务处理器、关闭连接管理器服务、重新发起一次连接
+ * 基于Netty实现RPC框架: 连接管理器: 解析地址、从JVM内共享的连接注册表引用每个地址的连接池、连接状态变化时重新发布可用地址快照、释放所有连接资源、按负载均衡策略选择业务处理器、关闭连接管理器服务、重新发起一次连接
+ *      每个服务一个连接管理器, 只维护自己的地址列表、权重和负载均衡器, 连接和线程组由RpcConnectionPool在所有服务之间共享
+ *      异常节点摘除: 失败率由每个连接的熔断器自己判断, 延迟需要和同一服务的其他地址比较, 由连接管理器定时检测
  */
 @Slf4j
 public class RpcConnectManager {
@@ -32,29 +33,97 @@ public class RpcConnectManager {
 //        return RPC_CONNECT_MANAGER;
 //    }
 
+    /**
+     * Client端可选配置
+     */
+    private final RpcClientOptions options;
+
+    /**
+     * JVM内共享的连接注册表
+     */
+    private final RpcConnectionPool connectionPool = RpcConnectionPool.getInstance();
+
+    /**
+     * 共享连接状态变化时重新发布可用地址快照
+     */
+    private final Runnable connectionListener = new Runnable() {
+        public void run() {
+            publishAvailableEndpoints();
+        }
+    };
+
     public RpcConnectManager() {
+        this(new RpcClientOptions());
+    }
 
+    /**
+     * 负载均衡器: 每个连接管理器一个
+     */
+    private final LoadBalancer loadBalancer;
+
+    /**
+     * 方法名-负载均衡器: 只包含配置了方法级策略的方法
+     */
+    private final Map<String, LoadBalancer> methodLoadBalancers = new HashMap<String, LoadBalancer>();
+
+    public RpcConnectManager(RpcClientOptions options) {
+        this.options = options;
+        this.loadBalancer = options.getLoadBalancer() != null ? options.getLoadBalancer() : LoadBalancer.newLoadBalancer(options.getLoadBalance(), options.getHashArgument());
+        for (MethodConfig methodConfig : options.getMethods().values()) {
+            if(methodConfig.getLoadBalance() != null) {
+                methodLoadBalancers.put(methodConfig.getName(), LoadBalancer.newLoadBalancer(methodConfig.getLoadBalance(), methodConfig.getHashArgument()));
+            }
+        }
+        // 集群容错策略: 方法级配置中没有指定的部分沿用接口级配置
+        this.budget = new RpcBudget(options.getRetryBudgetPercent(), options.getRetryBudgetMin(), 10000);
+        this.clusterInvoker = ClusterInvoker.newClusterInvoker(options.getCluster(), this, options.getRetries(), options.getForks(), options.getHedgingDelayMillis());
+        for (MethodConfig methodConfig : options.getMethods().values()) {
+            if(methodConfig.getCluster() != null) {
+                methodClusterInvokers.put(methodConfig.getName(), ClusterInvoker.newClusterInvoker(methodConfig.getCluster(), this,
+                        methodConfig.getRetries() < 0 ? options.getRetries() : methodConfig.getRetries(),
+                        methodConfig.getForks() < 0 ? options.getForks() : methodConfig.getForks(),
+                        methodConfig.getHedgingDelayMillis() < 0 ? options.getHedgingDelayMillis() : methodConfig.getHedgingDelayMillis()));
+            }
+        }
+        // 引用共享线程组: stop时释放
+        connectionPool.retain();
+
+        // 定时按延迟检测异常节点
+        CircuitBreakerOptions circuitBreaker = options.getCircuitBreaker();
+        if(circuitBreaker.isEnabled() && circuitBreaker.getSlowRatio() > 0) {
+            this.outlierDetection = connectionPool.eventLoopGroup().next().scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    detectSlowEndpoints();
+                }
+            }, circuitBreaker.getDetectionIntervalMillis(), circuitBreaker.getDetectionIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
-     * InetSocketAddress-RpcClientHandler
+     * 额外请求(重试、并行、对冲)预算: 所有集群容错策略共用
+     */
+    private final RpcBudget budget;
+
+    /**
+     * 集群容错策略: 接口级一个, 配置了方法级策略的方法各一个
      */
-    private Map<InetSocketAddress, RpcClientHandler> connectedHandlerMap = new ConcurrentHashMap<InetSocketAddress, RpcClientHandler>();
+    private final ClusterInvoker clusterInvoker;
+    private final Map<String, ClusterInvoker> methodClusterInvokers = new HashMap<String, ClusterInvoker>();
 
     /**
-     * 已连接成功的RpcClientHandler
+     * 按延迟检测异常节点的定时任务: stop时取消
      */
-    private CopyOnWriteArrayList<RpcClientHandler> connectedHandlerList = new CopyOnWriteArrayList<RpcClientHandler>();
+    private ScheduledFuture<?> outlierDetection;
 
     /**
-     * 用于发起异步连接的线程池
+     * InetSocketAddress-RpcEndpoint: 该服务的每个服务提供者地址, 连接池来自共享的连接注册表
      */
-    private ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(16, 16, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(65536));
+    private Map<InetSocketAddress, RpcEndpoint> endpointMap = new ConcurrentHashMap<InetSocketAddress, RpcEndpoint>();
 
     /**
-     * 连接线程组
+     * 可用地址的不可变快照: 只在地址或者连接状态变化时重新发布, 选择连接时直接读取, 不加锁也不分配对象
      */
-    private EventLoopGroup eventLoopGroup = new NioEventLoopGroup(4);
+    private volatile RpcEndpoint[] availableEndpoints = new RpcEndpoint[0];
 
     /**
      * connectedCondition#signalAll唤醒另外一端的线程(阻塞的状态中): 告知有新连接加入
@@ -63,7 +132,6 @@ public class RpcConnectManager {
     private Condition connectedCondition = connectedLock.newCondition();
     private long connectTimeoutMills = 6000;// 连接选择器等待的超时时间
     private volatile boolean isRunning = true;// 程序开关: 连接管理器运行状态
-    private volatile AtomicInteger handlerIndex = new AtomicInteger(0);// 当前连接选择器所选的业务处理器索引 => volatile是多余的, 写不写都可以, 因为AtomicInteger的value本身就是用了volatile修饰
 
     // 1. 异步连接、线程池、真正发起连接、连接失败监听、连接成功监听
     // 2. 对于连接进来的资源做一个缓存(即管理)
@@ -96,108 +164,124 @@ public class RpcConnectManager {
         }
 
         // 192.168.1.100:8765,192.168.1.101:8765
-        // 1. 解析allServerAddress地址, 并且临时存储到HashSet中 => 注意, 这里InetSocketAddress已经重写了equals方法, 可以达到去重的效果
-        Set<InetSocketAddress> newAllServerNodeSet = new HashSet<InetSocketAddress>();
+        // 1. 解析allServerAddress地址, 并且临时存储到HashMap中 => 注意, 这里InetSocketAddress已经重写了equals方法, 可以达到去重的效果
+        //    注册中心按权重重复地址, 所以同一个地址出现的次数就是它的权重
+        Map<InetSocketAddress, Integer> newAllServerNodeWeights = new HashMap<InetSocketAddress, Integer>();
         for (String serverAddress : allServerAddress) {
-            String[] array = serverAddress.split(":");
-            if(array.length == 2) {
-                String host = array[0];
-                int port = Integer.parseInt(array[1]);
-                InetSocketAddress inetSocketAddress = new InetSocketAddress(host, port);
-                newAllServerNodeSet.add(inetSocketAddress);
+            InetSocketAddress inetSocketAddress = parseAddress(serverAddress);
+            if(inetSocketAddress != null) {
+                Integer weight = newAllServerNodeWeights.get(inetSocketAddress);
+                newAllServerNodeWeights.put(inetSocketAddress, weight == null ? 1 : weight + 1);
             }
         }
 
-        // 2. 调用建立连接方法, 发起远程连接操作
-        Set<InetSocketAddress> existedInetSocketAddresses = connectedHandlerMap.keySet();
-        for (InetSocketAddress inetSocketAddress : newAllServerNodeSet) {
-            if(!existedInetSocketAddresses.contains(inetSocketAddress)){
-                connectAsync(inetSocketAddress);
+        // 2. 调用建立连接方法, 发起远程连接操作: 新地址按配置的连接数建立连接池, 已有地址更新权重
+        for (Map.Entry<InetSocketAddress, Integer> entry : newAllServerNodeWeights.entrySet()) {
+            RpcEndpoint endpoint = endpointMap.get(entry.getKey());
+            if(endpoint == null){
+                endpoint = addEndpoint(entry.getKey());
             }
+            endpoint.setWeight(entry.getValue());
         }
 
         // 3. 如果allServerAddress没出现对应的地址, 则需要从缓存中移除
-        RpcClientHandler[] rpcClientHandlers = connectedHandlerList.toArray(new RpcClientHandler[0]);
-        for (int i = 0; i < rpcClientHandlers.length; i++) {
-            RpcClientHandler rpcClientHandler = rpcClientHandlers[i];
-            SocketAddress remotePeer = rpcClientHandler.getRemotePeer();
-            if(newAllServerNodeSet.contains(remotePeer)){
-                log.info(" remove invalid server node " + remotePeer);
-                clearConnected((InetSocketAddress) remotePeer);
+        for (RpcEndpoint endpoint : endpointMap.values()) {
+            if(!newAllServerNodeWeights.containsKey(endpoint.getAddress())){
+                log.info(" remove invalid server node " + endpoint.getAddress());
+                clearConnected(endpoint.getAddress());
             }
         }
+
+        // 4. 重新发布可用地址快照: 权重变化也需要让负载均衡器感知
+        publishAvailableEndpoints();
     }
 
     /**
-     * 异步发起连接
-     * @param remotePeer
+     * 增量添加服务地址: 新地址建立连接池, 已有地址只更新权重, 不影响其他地址的连接
+     * @param serverAddress host:port
+     * @param weight
      */
-    private void connectAsync(InetSocketAddress remotePeer) {
-        threadPoolExecutor.submit(new Runnable() {
-            public void run() {
-                Bootstrap bootstrap = new Bootstrap();
-                bootstrap
-                        .group(eventLoopGroup)
-                        .channel(NioSocketChannel.class)
-                        .option(ChannelOption.TCP_NODELAY, true)
-                        .handler(new RpcClientInitializer());
-                connect(bootstrap, remotePeer);
-            }
-        });
+    public void addServer(String serverAddress, int weight) {
+        InetSocketAddress inetSocketAddress = parseAddress(serverAddress);
+        if(inetSocketAddress == null) {
+            return;
+        }
+        RpcEndpoint endpoint = endpointMap.get(inetSocketAddress);
+        if(endpoint == null) {
+            endpoint = addEndpoint(inetSocketAddress);
+        }
+        endpoint.setWeight(weight);
+        publishAvailableEndpoints();
     }
 
     /**
-     * 发起连接
-     * @param b
-     * @param remotePeer
+     * 增量移除服务地址: 只关闭该地址上的连接
+     * @param serverAddress host:port
      */
-    private void connect(Bootstrap b, InetSocketAddress remotePeer){
-        // 1. 真正的建立连接
-        final ChannelFuture channelFuture = b.connect(remotePeer);
-
-        // 2. 连接失败的时候添加监听: 用于清除连接失败的资源, 发起重连操作
-        channelFuture.channel().closeFuture().addListener(new ChannelFutureListener() {
-            public void operationComplete(ChannelFuture future) throws Exception {
-                log.info("channelFuture.channel close operationComplete, remote peer = " + remotePeer);
-                future.channel().eventLoop().schedule(new Runnable() {
-                    public void run() {
-                        log.warn(" connect fail, to reconnect!");
-                        clearConnected(remotePeer);
-                        connect(b, remotePeer);
-                    }
-                }, 3, TimeUnit.SECONDS);
-            }
-        });
-
-        // 3. 连接成功的时候添加监听: 用于把新的连接放入缓存中
-        channelFuture.addListener(new ChannelFutureListener() {
-            public void operationComplete(ChannelFuture future) throws Exception {
-                if(future.isSuccess()){
-                    log.info("successfully connect to remote server, remote peer = " + remotePeer);
-                    RpcClientHandler handler = future.channel().pipeline().get(RpcClientHandler.class);
-                    addHandler(handler);
-                }
-            }
-        });
+    public void removeServer(String serverAddress) {
+        InetSocketAddress inetSocketAddress = parseAddress(serverAddress);
+        if(inetSocketAddress != null) {
+            log.info(" remove invalid server node " + inetSocketAddress);
+            clearConnected(inetSocketAddress);
+        }
     }
 
     /**
-     * 添加RpcClientHandler到缓存中: connectedHandlerList & connectedHandlerMap
-     * @param handler
+     * 解析服务地址
+     * @param serverAddress host:port
+     * @return 格式不正确时返回null
      */
-    private void addHandler(RpcClientHandler handler) {
-        connectedHandlerList.add(handler);
-        // 2、执行顺序: 此时属于添加客户端建立连接完成的节点上, 客户端与服务端的通道还没激活, 所以如果在通道激活期间赋值RemotePeer是获取不到的
-//        connectedHandlerMap.put((InetSocketAddress) handler.getRemotePeer(), handler);
-        // 所以改用通道获取值RemotePeer
-        connectedHandlerMap.put((InetSocketAddress) handler.getChannel().remoteAddress(), handler);
+    private InetSocketAddress parseAddress(String serverAddress) {
+        String[] array = serverAddress.split(":");
+        if(array.length != 2) {
+            return null;
+        }
+        String host = array[0];
+        int port = Integer.parseInt(array[1]);
+        return new InetSocketAddress(host, port);
+    }
 
-        // 唤醒可用的业务执行器 signalAvailableHandler
-        signalAvailableHandler();
+    /**
+     * 为新地址引用共享的连接池: 其他服务已经连接过该地址时直接复用, 否则异步发起连接
+     * @param remotePeer
+     */
+    private RpcEndpoint addEndpoint(InetSocketAddress remotePeer) {
+        RpcConnectionGroup connections = connectionPool.acquire(remotePeer, options);
+        connections.addListener(connectionListener);
+        RpcEndpoint endpoint = new RpcEndpoint(connections);
+        endpointMap.put(remotePeer, endpoint);
+        return endpoint;
+    }
+
+    /**
+     * 重新发布可用地址快照: 与等待共用一把锁, 发布和唤醒之间不会丢失通知
+     */
+    private void publishAvailableEndpoints() {
+        connectedLock.lock();
+        try {
+            List<RpcEndpoint> available = new ArrayList<RpcEndpoint>();
+            for (RpcEndpoint endpoint : endpointMap.values()) {
+                if(endpoint.isAvailable()) {
+                    available.add(endpoint);
+                }
+            }
+            // 所有已连接的地址都被熔断: 宁可继续调用, 也不让服务整体不可用
+            if(available.isEmpty()) {
+                for (RpcEndpoint endpoint : endpointMap.values()) {
+                    if(endpoint.isConnected()) {
+                        available.add(endpoint);
+                    }
+                }
+            }
+            this.availableEndpoints = available.toArray(new RpcEndpoint[0]);
+            connectedCondition.signalAll();
+        } finally {
+            connectedLock.unlock();
+        }
     }
 
     /**
-     * 唤醒另外一端的线程(阻塞的状态中): 告知连接选择处理器有新连接加入
+     * 唤醒另外一端的线程(阻塞的状态中): 告知连接选择处理器状态发生了变化
      */
     private void signalAvailableHandler() {
         connectedLock.lock();
@@ -209,11 +293,14 @@ public class RpcConnectManager {
     }
 
     /**
-     * 等待新连接接入
+     * 等待新连接接入: 加锁后再检查一次快照, 避免错过检查与等待之间发布的连接
      */
     private boolean waitingAvailableHandler() throws InterruptedException {
         connectedLock.lock();
         try {
+            if(availableEndpoints.length > 0 || !isRunning) {
+                return true;
+            }
             return connectedCondition.await(this.connectTimeoutMills, TimeUnit.MILLISECONDS);
         } finally {
             connectedLock.unlock();
@@ -221,20 +308,124 @@ public class RpcConnectManager {
     }
 
     /**
-     * 连接选择处理器
+     * 写出统计: 可以获取每次flush合并的请求数, 连接是共享的, 所以是所有服务的统计
+     * @return
+     */
+    public RpcWriteMetrics getWriteMetrics() {
+        return connectionPool.getWriteMetrics();
+    }
+
+    /**
+     * 请求统计: 可以获取取消的请求数, 连接是共享的, 所以是所有服务的统计
      * @return
      */
+    public RpcClientMetrics getClientMetrics() {
+        return connectionPool.getClientMetrics();
+    }
+
+    /**
+     * Client端可选配置: 回调线程池等按请求生效的配置
+     * @return
+     */
+    public RpcClientOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 额外请求预算: 由集群容错策略申请
+     * @return
+     */
+    public RpcBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * 按集群容错策略发起一次调用: 方法级配置优先
+     *      在服务方法内部发起的嵌套调用, 超时时间不超过上游请求剩余的时间, 已经过期时直接失败, 不再发送
+     * @param request
+     * @param timeoutMillis 每次请求的超时时间(毫秒)
+     * @param callbackExecutor 返回的RpcFuture回调的执行线程池
+     * @return
+     */
+    public RpcFuture invoke(RpcRequest request, long timeoutMillis, Executor callbackExecutor) {
+        long remainingMillis = RpcContext.getContext().getRemainingMillis();
+        if(remainingMillis <= 0) {
+            RpcFuture rpcFuture = new RpcFuture(request, callbackExecutor);
+            rpcFuture.fail(new RpcTimeoutException("deadline exceeded before sending, className: " + request.getClassName()
+                                                    + ", methodName: " + request.getMethodName()));
+            return rpcFuture;
+        }
+        return getClusterInvoker(request.getMethodName()).invoke(request, Math.min(timeoutMillis, remainingMillis), callbackExecutor);
+    }
+
+    /**
+     * 方法使用的集群容错策略: 可以获取重试次数等统计
+     * @param methodName
+     * @return
+     */
+    public ClusterInvoker getClusterInvoker(String methodName) {
+        if(!methodClusterInvokers.isEmpty()) {
+            ClusterInvoker methodClusterInvoker = methodClusterInvokers.get(methodName);
+            if(methodClusterInvoker != null) {
+                return methodClusterInvoker;
+            }
+        }
+        return clusterInvoker;
+    }
+
     public RpcClientHandler chooseHandler(){
-        // 复制一份handler列表, 解决线程安全问题
-        CopyOnWriteArrayList<RpcClientHandler> handlers = (CopyOnWriteArrayList<RpcClientHandler>) this.connectedHandlerList.clone();
-        int size = handlers.size();
-        while (isRunning && size <= 0) {
-            try {
-                if(waitingAvailableHandler()){
-                    // 再复制一份handler列表, 解决线程安全问题 => 因为都通知到了, 说明有新的handler加入了, 所以需要刷新复制的列表
-                    handlers = (CopyOnWriteArrayList<RpcClientHandler>) this.connectedHandlerList.clone();
-                    size = handlers.size();
+        return chooseHandler(null);
+    }
+
+    /**
+     * 选择其他地址上的连接: 用于重试、对冲等需要换地址的场景, 不等待新连接接入
+     * @param request 本次请求, 供负载均衡器使用
+     * @param excluded 不选择这些地址
+     * @return 没有其他可用地址时返回null
+     */
+    public RpcClientHandler chooseHandler(RpcRequest request, Collection<? extends SocketAddress> excluded) {
+        // 在发布的快照上选择并跳过排除的地址: 不能把临时数组交给负载均衡器, 否则一致性哈希会把它当成新快照重建环
+        RpcEndpoint[] endpoints = this.availableEndpoints;
+        if(endpoints.length == 0) {
+            return null;
+        }
+        RpcEndpoint chosen = loadBalancer(request).select(endpoints, request, excluded);
+        if(chosen == null) {
+            return null;
+        }
+        RpcClientHandler handler = chosen.chooseHandler();
+        if(handler != null) {
+            return handler;
+        }
+        for (RpcEndpoint endpoint : endpoints) {
+            if(endpoint != chosen && !excluded.contains(endpoint.getAddress())) {
+                handler = endpoint.chooseHandler();
+                if(handler != null) {
+                    return handler;
                 }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 连接选择处理器: 由负载均衡器选择地址, 再选择该地址上未完成请求数最少的连接
+     * @param request 本次请求, 供负载均衡器使用
+     * @return
+     */
+    public RpcClientHandler chooseHandler(RpcRequest request){
+        // 稳定状态: 直接从快照中选择
+        RpcClientHandler handler = chooseAvailableHandler(request);
+        if(handler != null) {
+            return handler;
+        }
+
+        // 还没有可用连接(比如刚启动): 等待新连接接入
+        while (isRunning && handler == null) {
+            try {
+                // 因为都通知到了, 说明有新的连接加入了, 所以需要重新选择
+                waitingAvailableHandler();
+                handler = chooseAvailableHandler(request);
             } catch (InterruptedException e) {
                 log.error(" waiting for available node is interrupted!");
                 throw new RuntimeException("no connect any servers!", e);
@@ -243,76 +434,157 @@ public class RpcConnectManager {
 
         // 防止做stop时带来的风险
         if(!isRunning) return null;
+        return handler;
+    }
+
+    /**
+     * 在可用地址快照中由负载均衡器选择
+     * @param request
+     * @return 没有可用连接时返回null
+     */
+    private RpcClientHandler chooseAvailableHandler(RpcRequest request) {
+        RpcEndpoint[] endpoints = this.availableEndpoints;
+        if(endpoints.length == 0) {
+            return null;
+        }
+        RpcClientHandler handler = loadBalancer(request).select(endpoints, request).chooseHandler();
+        if(handler != null) {
+            return handler;
+        }
+
+        // 选中的地址上的连接刚刚断开或者熔断, 快照还没来得及更新: 退回第一个可用的地址
+        for (RpcEndpoint endpoint : endpoints) {
+            handler = endpoint.chooseHandler();
+            if(handler != null) {
+                return handler;
+            }
+        }
+
+        // 快照中的地址全部熔断: 忽略熔断选择已连接的地址
+        for (RpcEndpoint endpoint : endpoints) {
+            handler = endpoint.chooseConnectedHandler();
+            if(handler != null) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按延迟检测异常节点: 平均延迟超过其他地址中位数slowRatio倍的地址被摘除
+     *      1. 只比较窗口内请求数足够的可用地址, 至少3个地址时中位数才有意义
+     *      2. 被摘除的地址总数不超过maxEjectionPercent, 避免整体变慢时摘光所有地址
+     */
+    private void detectSlowEndpoints() {
+        CircuitBreakerOptions circuitBreaker = options.getCircuitBreaker();
+        List<RpcEndpoint> candidates = new ArrayList<RpcEndpoint>();
+        List<Double> latencies = new ArrayList<Double>();
+        int total = 0;
+        int ejected = 0;
+        for (RpcEndpoint endpoint : endpointMap.values()) {
+            if(!endpoint.isConnected()) {
+                continue;
+            }
+            total++;
+            if(!endpoint.isAvailable()) {
+                ejected++;
+                continue;
+            }
+            RollingWindow.Stats stats = endpoint.getStats();
+            if(stats.getRequests() >= circuitBreaker.getMinRequests()) {
+                candidates.add(endpoint);
+                latencies.add(stats.getMeanLatencyNanos());
+            }
+        }
+        if(candidates.size() < 3) {
+            return;
+        }
+        List<Double> sorted = new ArrayList<Double>(latencies);
+        Collections.sort(sorted);
+        double median = sorted.get(sorted.size() / 2);
+        int maxEjected = total * circuitBreaker.getMaxEjectionPercent() / 100;
+        for (int i = 0; i < candidates.size() && ejected < maxEjected; i++) {
+            double latency = latencies.get(i);
+            if(median > 0 && latency > median * circuitBreaker.getSlowRatio()) {
+                String reason = "mean latency " + (long) (latency / 1000) + "us, median " + (long) (median / 1000) + "us";
+                if(candidates.get(i).eject(reason)) {
+                    ejected++;
+                }
+            }
+        }
+    }
 
-        // 取模方式轮训选择业务处理器
-        return handlers.get((handlerIndex.getAndAdd(1) + size) % size);
+    /**
+     * 本次请求使用的负载均衡器: 方法级配置优先
+     * @param request
+     * @return
+     */
+    private LoadBalancer loadBalancer(RpcRequest request) {
+        if(request != null && !methodLoadBalancers.isEmpty()) {
+            LoadBalancer methodLoadBalancer = methodLoadBalancers.get(request.getMethodName());
+            if(methodLoadBalancer != null) {
+                return methodLoadBalancer;
+            }
+        }
+        return loadBalancer;
     }
 
     /**
      * 关闭连接管理器服务
      */
-    public void stop(){
+    public synchronized void stop(){
+        // 只释放一次共享资源
+        if(!isRunning) {
+            return;
+        }
         // 程序开关为false
         isRunning = false;
 
-        // 关闭handler连接资源
-        RpcClientHandler[] rpcClientHandlers = connectedHandlerList.toArray(new RpcClientHandler[0]);
-        for (RpcClientHandler rpcClientHandler : rpcClientHandlers) {
-            clearConnected((InetSocketAddress) rpcClientHandler.getRemotePeer());
+        if(outlierDetection != null) {
+            outlierDetection.cancel(false);
         }
 
+        // 释放所有地址上的共享连接池
+        clearAllConnected();
+
         // 唤醒所有正在阻塞的线程, 因为程序开关发生了变化 => 这次唤醒会使得所有线程统统选择了空的业务处理器
         // 或者可以让阻塞的线程进行等待超时, 然后抛出了异常就终止了 => 但是这样不优雅
         signalAvailableHandler();
 
-        // 关闭资源
-        threadPoolExecutor.shutdown();
-        eventLoopGroup.shutdownGracefully();
+        // 释放共享线程组: 最后一个连接管理器关闭时才真正关闭
+        connectionPool.release();
     }
 
     /**
-     * 重新发起一次连接
+     * 重新发起一次连接: 关闭旧连接后, 由该连接所在槽位的断线监听负责重连
+     *      连接是共享的, 每个槽位一直在断线重连, 没有旧连接时不需要额外处理
      */
     public void reconnect(RpcClientHandler handler, SocketAddress remotePeer) {
         // 释放旧的资源
         if(handler != null) {
             handler.close();
-            connectedHandlerList.remove(handler);
-            connectedHandlerMap.remove(remotePeer);
         }
-
-        // 重新异步地发起一次连接
-        connectAsync((InetSocketAddress) remotePeer);
     }
 
     /**
-     * 连接失败时, 及时清除资源, 清空缓存: 单独清理失败的
+     * 地址移除时, 及时清除资源, 清空缓存: 释放该地址上的共享连接池, 最后一个引用它的服务释放时才关闭连接
      */
     private void clearConnected(InetSocketAddress remotePeer) {
-        // 然后从connectedHandlerMap缓存中移除指定的rpcClientHandler
-        RpcClientHandler handler = connectedHandlerMap.get(remotePeer);
-        if(handler != null) {
-            handler.close();
-            connectedHandlerMap.remove(remotePeer);
+        RpcEndpoint endpoint = endpointMap.remove(remotePeer);
+        if(endpoint != null) {
+            RpcConnectionGroup connections = endpoint.getConnectionGroup();
+            connections.removeListener(connectionListener);
+            connectionPool.release(connections);
+            publishAvailableEndpoints();
         }
-        connectedHandlerList.remove(handler);
     }
 
     /**
      * 清除所有缓存
      */
     private void clearAllConnected() {
-        for (RpcClientHandler rpcClientHandler : connectedHandlerList) {
-            // 通过rpcClientHandler找到remotePeer => 在rpcClientHandler缓存了remotePeer的引用
-            SocketAddress remotePeer = rpcClientHandler.getRemotePeer();
-
-            // 然后从connectedHandlerMap缓存中移除指定的rpcClientHandler
-            RpcClientHandler handler = connectedHandlerMap.get(remotePeer);
-            if(handler != null) {
-                handler.close();
-                connectedHandlerMap.remove(remotePeer);
-            }
+        for (InetSocketAddress remotePeer : endpointMap.keySet()) {
+            clearConnected(remotePeer);
         }
-        connectedHandlerList.clear();
     }
 }
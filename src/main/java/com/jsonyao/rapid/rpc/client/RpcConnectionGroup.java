@@ -0,0 +1,356 @@
+package com.jsonyao.rapid.rpc.client;
+
+import com.jsonyao.rapid.rpc.utils.RollingWindow;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 基于Netty实现RPC框架: 一个服务提供者地址上的共享连接池
+ *      1. 由RpcConnectionPool按地址创建, 同一个JVM内所有引用该地址的服务共用, 请求在连接上多路复用
+ *      2. 每个地址建立固定数目的连接(槽位), 每个槽位单独断线重连, 互不影响
+ *      3. 选择连接时选未完成请求数最少的连接, 大响应只会阻塞所在的连接
+ *      4. 连接状态变化时通知所有引用该地址的连接管理器, 由它们各自重新发布可用地址快照
+ *      5. 每个连接有自己的熔断器: 熔断中的连接不参与选择, 熔断状态变化同样通知连接管理器
+ */
+@Slf4j
+public class RpcConnectionGroup {
+
+    private final RpcConnectionPool pool;
+
+    /**
+     * 连接池的键: 地址加上连接级配置
+     */
+    private final String key;
+
+    private final InetSocketAddress address;
+
+    /**
+     * 第一个引用该地址的Client的配置: 只使用其中的连接级配置
+     */
+    private final RpcClientOptions options;
+
+    /**
+     * 连接槽位: 槽位上为空代表该连接正在建立或者重连中
+     */
+    private final AtomicReferenceArray<RpcClientHandler> handlers;
+
+    /**
+     * 引用计数: 由RpcConnectionPool加锁维护, 归零时关闭所有连接
+     */
+    private int refCnt;
+
+    /**
+     * 已经没有服务引用该地址: 不再重连
+     */
+    private volatile boolean closed;
+
+    /**
+     * 连接状态变化的监听器: 每个引用该地址的连接管理器一个
+     */
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+    /**
+     * 选择连接时的起始槽位: 未完成请求数相同时轮流选择不同的连接
+     */
+    private final AtomicInteger index = new AtomicInteger();
+
+    /**
+     * 熔断器状态变化时同样重新发布可用地址快照
+     */
+    private final Runnable breakerListener = new Runnable() {
+        public void run() {
+            fireStateChanged();
+        }
+    };
+
+    RpcConnectionGroup(RpcConnectionPool pool, String key, InetSocketAddress address, RpcClientOptions options) {
+        this.pool = pool;
+        this.key = key;
+        this.address = address;
+        this.options = options;
+        this.handlers = new AtomicReferenceArray<>(Math.max(1, options.getConnectionsPerEndpoint()));
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    int retain() {
+        return ++refCnt;
+    }
+
+    int release() {
+        return --refCnt;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public int getConnections() {
+        return handlers.length();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireStateChanged() {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * 每个槽位单独异步发起连接: Bootstrap#connect本身就是异步的, 不需要额外的线程池
+     */
+    void connect() {
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap
+                .group(pool.eventLoopGroup())
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                // 池化的直接内存: 编码器直接序列化到池化的ByteBuf中
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .handler(new RpcClientInitializer(options, pool.getWriteMetrics(), pool.getClientMetrics()));
+        for (int slot = 0; slot < handlers.length(); slot++) {
+            connect(bootstrap, slot);
+        }
+    }
+
+    /**
+     * 发起连接
+     * @param b
+     * @param slot 连接池中的槽位
+     */
+    private void connect(final Bootstrap b, final int slot) {
+        // 1. 真正的建立连接
+        final ChannelFuture channelFuture = b.connect(address);
+
+        // 2. 连接失败或者断开的时候添加监听: 只清除这一个槽位上的连接, 并且只重连这一个槽位
+        channelFuture.channel().closeFuture().addListener(new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) throws Exception {
+                log.info("channelFuture.channel close operationComplete, remote peer = " + address + ", slot = " + slot);
+                RpcClientHandler handler = future.channel().pipeline().get(RpcClientHandler.class);
+                if(handler != null) {
+                    handlers.compareAndSet(slot, handler, null);
+                }
+                fireStateChanged();
+                // 已经没有服务引用该地址: 不再重连
+                if(closed) {
+                    return;
+                }
+                try {
+                    future.channel().eventLoop().schedule(new Runnable() {
+                        public void run() {
+                            if(!closed) {
+                                log.warn(" connect fail, to reconnect! remote peer = " + address + ", slot = " + slot);
+                                connect(b, slot);
+                            }
+                        }
+                    }, 3, TimeUnit.SECONDS);
+                } catch (RejectedExecutionException e) {
+                    // 共享线程组已经关闭
+                    log.info(" event loop group is shutting down, stop reconnect remote peer = " + address);
+                }
+            }
+        });
+
+        // 3. 连接成功的时候添加监听: 用于把新的连接放入连接池的槽位中
+        channelFuture.addListener(new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if(future.isSuccess()){
+                    log.info("successfully connect to remote server, remote peer = " + address + ", slot = " + slot);
+                    RpcClientHandler handler = future.channel().pipeline().get(RpcClientHandler.class);
+                    handler.getCircuitBreaker().setListener(breakerListener);
+                    // 先放入槽位再检查是否已经关闭: close()在两步之间执行时已经清理过槽位, 新连接需要由这里关闭
+                    handlers.set(slot, handler);
+                    if(closed) {
+                        // CAS失败说明close()已经取走并关闭了它
+                        if(handlers.compareAndSet(slot, handler, null)) {
+                            handler.close();
+                        }
+                        return;
+                    }
+                    fireStateChanged();
+                }
+            }
+        });
+    }
+
+    /**
+     * 是否存在可用的连接: 已连接并且没有熔断
+     * @return
+     */
+    public boolean isAvailable() {
+        for (int i = 0; i < handlers.length(); i++) {
+            RpcClientHandler handler = handlers.get(i);
+            if(handler != null && handler.isActive() && handler.getCircuitBreaker().isAvailable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 是否存在已连接的连接: 不考虑熔断
+     * @return
+     */
+    public boolean isConnected() {
+        for (int i = 0; i < handlers.length(); i++) {
+            RpcClientHandler handler = handlers.get(i);
+            if(handler != null && handler.isActive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 所有已连接的连接在滑动窗口内的统计之和
+     * @return
+     */
+    public RollingWindow.Stats getStats() {
+        RollingWindow.Stats stats = new RollingWindow.Stats(0, 0, 0);
+        for (int i = 0; i < handlers.length(); i++) {
+            RpcClientHandler handler = handlers.get(i);
+            if(handler != null && handler.isActive()) {
+                stats = stats.add(handler.getCircuitBreaker().getStats());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 摘除该地址上所有没有熔断的连接
+     * @param reason
+     * @return 是否有连接被摘除
+     */
+    boolean eject(String reason) {
+        boolean ejected = false;
+        for (int i = 0; i < handlers.length(); i++) {
+            RpcClientHandler handler = handlers.get(i);
+            if(handler != null && handler.isActive()) {
+                ejected |= handler.getCircuitBreaker().eject(reason);
+            }
+        }
+        return ejected;
+    }
+
+    /**
+     * 所有连接上未完成的请求数: 包含所有服务的请求
+     * @return
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (int i = 0; i < handlers.length(); i++) {
+            RpcClientHandler handler = handlers.get(i);
+            if(handler != null) {
+                pending += handler.getPendingCount();
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 所有可用连接的响应延迟EWMA的平均值(纳秒)
+     * @return 没有样本时为0
+     */
+    public double getLatencyEwma() {
+        double total = 0;
+        int count = 0;
+        for (int i = 0; i < handlers.length(); i++) {
+            RpcClientHandler handler = handlers.get(i);
+            if(handler != null && handler.isActive()) {
+                double latency = handler.getLatencyEwma();
+                if(latency > 0) {
+                    total += latency;
+                    count++;
+                }
+            }
+        }
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * 选择未完成请求数最少的可用连接: 跳过熔断中的连接, 选中半开的连接时占用它的探测名额
+     * @return 没有可用连接时返回null
+     */
+    public RpcClientHandler chooseHandler() {
+        // 探测名额被其他线程抢先占用时重新选择: 该连接此时已经不可用, 每个连接最多重选一次
+        for (int i = 0; i < handlers.length(); i++) {
+            RpcClientHandler chosen = choose(true);
+            if(chosen == null || chosen.getCircuitBreaker().acquire()) {
+                return chosen;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 选择未完成请求数最少的已连接的连接: 不考虑熔断, 用于所有地址都被熔断时兜底
+     * @return 没有已连接的连接时返回null
+     */
+    public RpcClientHandler chooseConnectedHandler() {
+        return choose(false);
+    }
+
+    private RpcClientHandler choose(boolean checkBreaker) {
+        RpcClientHandler chosen = null;
+        int minPending = Integer.MAX_VALUE;
+        int size = handlers.length();
+        int start = size == 1 ? 0 : index.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            RpcClientHandler handler = handlers.get((start + i) % size);
+            if(handler == null || !handler.isActive() || (checkBreaker && !handler.getCircuitBreaker().isAvailable())) {
+                continue;
+            }
+            int pending = handler.getPendingCount();
+            if(pending < minPending) {
+                chosen = handler;
+                minPending = pending;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * 关闭所有连接: 已经没有服务引用该地址
+     */
+    void close() {
+        closed = true;
+        listeners.clear();
+        for (int i = 0; i < handlers.length(); i++) {
+            RpcClientHandler handler = handlers.getAndSet(i, null);
+            if(handler != null) {
+                handler.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RpcConnectionGroup{address=" + address + ", connections=" + handlers.length() + ", pending=" + getPendingCount() + "}";
+    }
+}
@@ -0,0 +1,150 @@
+package com.jsonyao.rapid.rpc.client;
+
+import com.jsonyao.rapid.rpc.transport.RpcWriteMetrics;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于Netty实现RPC框架: JVM内共享的连接注册表
+ *      1. 按服务提供者地址(加上连接级配置)缓存连接池, 所有服务共用同一组TCP连接, 请求在连接上多路复用
+ *      2. 所有连接共用一个EventLoopGroup: 第一个连接管理器创建时启动, 最后一个连接管理器关闭时释放
+ *      3. 连接池按引用计数管理: 最后一个引用该地址的服务移除它时才关闭连接
+ */
+@Slf4j
+public final class RpcConnectionPool {
+
+    /**
+     * 单例模式: 饥饿式
+     */
+    private static final RpcConnectionPool INSTANCE = new RpcConnectionPool();
+    public static RpcConnectionPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 共享线程组的线程数
+     */
+    private static final int IO_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * key-RpcConnectionGroup: 由this加锁保护
+     */
+    private final Map<String, RpcConnectionGroup> groups = new HashMap<String, RpcConnectionGroup>();
+
+    /**
+     * 所有连接共享的写出统计
+     */
+    private final RpcWriteMetrics writeMetrics = new RpcWriteMetrics();
+
+    /**
+     * 所有连接共享的请求统计
+     */
+    private final RpcClientMetrics clientMetrics = new RpcClientMetrics();
+
+    /**
+     * 共享线程组及其引用计数: 由this加锁保护
+     */
+    private EventLoopGroup eventLoopGroup;
+    private int refCnt;
+
+    private RpcConnectionPool() {
+
+    }
+
+    /**
+     * 连接管理器创建时引用共享线程组
+     */
+    public synchronized void retain() {
+        if(refCnt++ == 0) {
+            eventLoopGroup = new NioEventLoopGroup(IO_THREADS, new DefaultThreadFactory("rapid-rpc-client-io"));
+        }
+    }
+
+    /**
+     * 连接管理器关闭时释放共享线程组: 最后一个释放时关闭所有连接和线程组
+     */
+    public synchronized void release() {
+        if(refCnt == 0) {
+            return;
+        }
+        if(--refCnt == 0) {
+            for (RpcConnectionGroup group : groups.values()) {
+                group.close();
+            }
+            groups.clear();
+            eventLoopGroup.shutdownGracefully();
+            eventLoopGroup = null;
+        }
+    }
+
+    synchronized EventLoopGroup eventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * 所有共享连接的写出统计: 可以获取每次flush合并的请求数
+     * @return
+     */
+    public RpcWriteMetrics getWriteMetrics() {
+        return writeMetrics;
+    }
+
+    /**
+     * 所有共享连接的请求统计: 可以获取取消的请求数
+     * @return
+     */
+    public RpcClientMetrics getClientMetrics() {
+        return clientMetrics;
+    }
+
+    /**
+     * 引用一个地址上的连接池: 不存在时创建并异步发起连接
+     *      只有连接级配置相同的Client才共用连接, 回调线程池、超时时间等按请求指定, 不影响共用
+     * @param address
+     * @param options
+     * @return
+     */
+    synchronized RpcConnectionGroup acquire(InetSocketAddress address, RpcClientOptions options) {
+        if(eventLoopGroup == null) {
+            throw new IllegalStateException("rpc connection pool is not retained");
+        }
+        String key = address + "#" + options.getConnectionsPerEndpoint() + "#" + options.isWriteCoalescing() + "#" + options.getMaxWriteBatch()
+                + "#" + options.getHeartbeatIntervalMillis() + "#" + options.getHeartbeatMissThreshold()
+                + "#" + options.getCircuitBreaker() + "#" + options.isCancelPropagation();
+        RpcConnectionGroup group = groups.get(key);
+        if(group == null) {
+            group = new RpcConnectionGroup(this, key, address, options);
+            groups.put(key, group);
+            group.connect();
+        }
+        group.retain();
+        return group;
+    }
+
+    /**
+     * 释放一个地址上的连接池: 最后一个引用释放时关闭该地址上的所有连接
+     * @param group
+     */
+    synchronized void release(RpcConnectionGroup group) {
+        if(group.release() == 0 && groups.remove(group.getKey()) == group) {
+            log.info(" close shared connections, remote peer = " + group.getAddress());
+            group.close();
+        }
+    }
+
+    /**
+     * 当前共享的连接池: 用于排查
+     * @return
+     */
+    public synchronized List<RpcConnectionGroup> getGroups() {
+        return new ArrayList<RpcConnectionGroup>(groups.values());
+    }
+}
@@ -0,0 +1,121 @@
+package com.jsonyao.rapid.rpc.client;
+
+import com.jsonyao.rapid.rpc.utils.RollingWindow;
+
+import java.net.InetSocketAddress;
+
+/**
+ * 基于Netty实现RPC框架: 一个服务看到的服务提供者地址
+ *      1. 连接来自JVM内共享的RpcConnectionGroup, 多个服务引用同一个地址时共用同一组连接
+ *      2. 权重来自该服务自己的注册信息, 不同服务之间互不影响
+ */
+public class RpcEndpoint {
+
+    /**
+     * 该地址上的共享连接池
+     */
+    private final RpcConnectionGroup connections;
+
+    /**
+     * 权重: 来自注册中心, 没有配置时为1
+     */
+    private volatile int weight = 1;
+
+    public RpcEndpoint(RpcConnectionGroup connections) {
+        this.connections = connections;
+    }
+
+    public InetSocketAddress getAddress() {
+        return connections.getAddress();
+    }
+
+    RpcConnectionGroup getConnectionGroup() {
+        return connections;
+    }
+
+    public int getConnections() {
+        return connections.getConnections();
+    }
+
+    public boolean isClosed() {
+        return connections.isClosed();
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    void setWeight(int weight) {
+        this.weight = Math.max(1, weight);
+    }
+
+    /**
+     * 是否存在可用的连接: 已连接并且没有熔断
+     * @return
+     */
+    public boolean isAvailable() {
+        return connections.isAvailable();
+    }
+
+    /**
+     * 是否存在已连接的连接: 不考虑熔断
+     * @return
+     */
+    public boolean isConnected() {
+        return connections.isConnected();
+    }
+
+    /**
+     * 所有连接在滑动窗口内的统计之和: 连接是共享的, 所以包含所有服务发往该地址的请求
+     * @return
+     */
+    public RollingWindow.Stats getStats() {
+        return connections.getStats();
+    }
+
+    /**
+     * 摘除该地址: 所有连接进入熔断, 到期后半开探测
+     * @param reason
+     * @return
+     */
+    boolean eject(String reason) {
+        return connections.eject(reason);
+    }
+
+    /**
+     * 所有连接上未完成的请求数: 连接是共享的, 所以包含所有服务发往该地址的请求
+     * @return
+     */
+    public int getPendingCount() {
+        return connections.getPendingCount();
+    }
+
+    /**
+     * 所有可用连接的响应延迟EWMA的平均值(纳秒)
+     * @return 没有样本时为0
+     */
+    public double getLatencyEwma() {
+        return connections.getLatencyEwma();
+    }
+
+    /**
+     * 选择未完成请求数最少的可用连接
+     * @return 没有可用连接时返回null
+     */
+    public RpcClientHandler chooseHandler() {
+        return connections.chooseHandler();
+    }
+
+    /**
+     * 选择未完成请求数最少的已连接的连接: 不考虑熔断
+     * @return 没有已连接的连接时返回null
+     */
+    public RpcClientHandler chooseConnectedHandler() {
+        return connections.chooseConnectedHandler();
+    }
+
+    @Override
+    public String toString() {
+        return "RpcEndpoint{address=" + getAddress() + ", weight=" + weight + ", connections=" + getConnections() + ", pending=" + getPendingCount() + "}";
+    }
+}
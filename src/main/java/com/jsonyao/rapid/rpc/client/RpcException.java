@@ -0,0 +1,17 @@
+package com.jsonyao.rapid.rpc.client;
+
+/**
+ * 基于Netty实现RPC框架: Client端RPC调用异常, 区别于服务端抛出的业务异常
+ */
+public class RpcException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RpcException(String message) {
+        super(message);
+    }
+
+    public RpcException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -2,75 +2,128 @@ package com.jsonyao.rapid.rpc.client;
 
 import com.jsonyao.rapid.rpc.codec.RpcRequest;
 import com.jsonyao.rapid.rpc.codec.RpcResponse;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.AbstractQueuedSynchronizer;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 /**
  * 基于Netty实现RPC框架: Client Future模型
+ *      1. 基于CompletableFuture: 无锁的完成状态和回调栈, 调用方可以通过CompletionStage组合调用, 而不需要阻塞
+ *      2. 回调统一在共享的(或者调用方指定的)线程池中执行, 指定DIRECT_EXECUTOR时直接在IO线程上执行
+ *      3. 支持取消: 从未完成请求表中移除, 并通知Server端跳过还在排队的请求
  */
 @Slf4j
-public class RpcFuture implements Future<Object> {
+public class RpcFuture extends CompletableFuture<Object> {
 
     private final static long TIME_THRESHOLD = 5000;
 
-    private RpcRequest request;
-    private RpcResponse response;
-    private long startTime;
-    private Sync sync;
+    /**
+     * 直接在完成Future的线程(即IO线程)上执行回调: 回调中不能有阻塞操作
+     */
+    public static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * 所有RpcFuture共享的回调线程池: 队列满时由提交线程执行, 保证回调不会丢失
+     */
+    public static final Executor DEFAULT_CALLBACK_EXECUTOR = new ThreadPoolExecutor(
+            Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors(), 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(65536), new DefaultThreadFactory("rapid-rpc-callback", true), new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private final RpcRequest request;
+    private final long startTime;
+    private final long startNanos;
+    private final Executor callbackExecutor;
+
+    /**
+     * 时间轮上的超时任务: 正常完成时取消, 避免时间轮中堆积已完成的请求
+     */
+    private volatile Timeout timeout;
 
-    private List<RpcCallback> pendingCallbacks = new ArrayList<>();
-    private ReentrantLock callbackLock = new ReentrantLock();
-    private ThreadPoolExecutor executor = new ThreadPoolExecutor(16, 16, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(65536));
+    /**
+     * 发出请求的连接: 取消时由它移除未完成请求并发送取消帧, 集群容错策略汇总结果的Future为空
+     */
+    private volatile RpcClientHandler handler;
 
     public RpcFuture(RpcRequest request) {
+        this(request, DEFAULT_CALLBACK_EXECUTOR);
+    }
+
+    public RpcFuture(RpcRequest request, Executor callbackExecutor) {
         this.request = request;
         this.startTime = System.currentTimeMillis();
-        this.sync = new Sync();
+        this.startNanos = System.nanoTime();
+        this.callbackExecutor = callbackExecutor;
     }
 
     /**
-     * 可以在应用执行过程中添加回调函数
+     * 可以在应用执行过程中添加回调函数: 在创建时指定的回调线程池中执行
      * @return
      */
     public RpcFuture addCallback(RpcCallback rpcCallback) {
-        callbackLock.lock();
-        try {
-            if(isDone()) {
-                runCallback(rpcCallback);
-            } else {
-                this.pendingCallbacks.add(rpcCallback);
+        return addCallback(rpcCallback, callbackExecutor);
+    }
+
+    /**
+     * 可以在应用执行过程中添加回调函数: 在指定的线程池中执行
+     * @param rpcCallback
+     * @param executor DIRECT_EXECUTOR代表直接在IO线程上执行
+     * @return
+     */
+    public RpcFuture addCallback(final RpcCallback rpcCallback, Executor executor) {
+        BiConsumer<Object, Throwable> action = new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object result, Throwable cause) {
+                if(cause == null) {
+                    rpcCallback.success(result);
+                } else {
+                    rpcCallback.failure(cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause);
+                }
             }
-        } finally {
-            callbackLock.unlock();
+        };
+        if(executor == DIRECT_EXECUTOR) {
+            whenComplete(action);
+        } else {
+            whenCompleteAsync(action, executor);
         }
-
         return this;
     }
 
+    /**
+     * 取消请求: Future以CancellationException完成, 之后到达的响应直接丢弃
+     * @param mayInterruptIfRunning 是否允许Server端中断执行中的请求, 还需要服务本身开启interruptOnCancel
+     * @return 已经完成时返回false
+     */
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public boolean isCancelled() {
-        throw new UnsupportedOperationException();
+        if(!super.cancel(mayInterruptIfRunning)) {
+            return false;
+        }
+        cancelTimeout();
+        RpcClientHandler handler = this.handler;
+        if(handler != null) {
+            handler.cancelRequest(request.getRequestId(), mayInterruptIfRunning);
+        }
+        return true;
     }
 
     /**
-     * 异步非阻塞方式执行回调处理操作
+     * 完成Future: 唤醒阻塞的调用方, 并触发回调
      * @param response
      */
     public void done(RpcResponse response) {
-        this.response = response;
-        boolean success = sync.release(1);
-        if(success) {
-            invokeCallbacks();
+        cancelTimeout();
+        if(response.getThrowable() == null) {
+            complete(response.getResult());
+        } else {
+            completeExceptionally(response.getThrowable());
         }
         // 记录整个RPC调用过程的时间
         long costTime = System.currentTimeMillis() - startTime;
@@ -82,56 +135,26 @@ public class RpcFuture implements Future<Object> {
     }
 
     /**
-     * 执行回调函数
+     * 以Client端异常失败Future: 超时、连接关闭、发送失败等
+     * @param cause
      */
-    private void invokeCallbacks() {
-        callbackLock.lock();
-        try {
-            for (final RpcCallback rpcCallback : pendingCallbacks) {
-                runCallback(rpcCallback);
-            }
-        } finally {
-            callbackLock.unlock();
-        }
+    public void fail(Throwable cause) {
+        cancelTimeout();
+        completeExceptionally(cause);
     }
 
-    /**
-     * 执行回调函数
-     * @param rpcCallback
-     */
-    private void runCallback(RpcCallback rpcCallback) {
-        final RpcResponse response = this.response;
-        executor.submit(new Runnable() {
-            @Override
-            public void run() {
-                if(response.getThrowable() == null) {
-                    rpcCallback.success(response.getResult());
-                } else {
-                    rpcCallback.failure(response.getThrowable());
-                }
-            }
-        });
+    void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
     }
 
-    @Override
-    public boolean isDone() {
-        return sync.isDone();
+    void setHandler(RpcClientHandler handler) {
+        this.handler = handler;
     }
 
-    /**
-     * 同步阻塞方式获取服务响应
-     * @return
-     * @throws InterruptedException
-     * @throws ExecutionException
-     */
-    @Override
-    public Object get() throws InterruptedException, ExecutionException {
-        // 同步阻塞等待
-        sync.acquire(-1);
-        if(this.response != null) {
-            return this.response.getResult();
-        } else {
-            return null;
+    private void cancelTimeout() {
+        Timeout timeout = this.timeout;
+        if(timeout != null) {
+            timeout.cancel();
         }
     }
 
@@ -139,73 +162,28 @@ public class RpcFuture implements Future<Object> {
      * 快速失败同步阻塞方式获取服务响应
      * @return
      * @throws InterruptedException
-     * @throws ExecutionException
+     * @throws ExecutionException 服务端抛出的异常
      */
     @Override
-    public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        // 快速失败同步阻塞方式获取
-        boolean success = sync.tryAcquireNanos(-1, unit.toNanos(timeout));
-        if(success) {
-            if(this.response != null) {
-                return this.response.getResult();
-            } else {
-                return null;
+    public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        try {
+            return super.get(timeout, unit);
+        } catch (TimeoutException e) {
+            // 调用方不再等待: 取消请求, 移出待响应表并通知Server端; 取消失败说明响应恰好到达, 直接返回结果
+            if(!cancel(true)) {
+                return super.get();
             }
-        } else {
-            throw new RuntimeException("timeout exception requestId: " + this.request.getRequestId()
+            throw new RpcTimeoutException("timeout exception requestId: " + this.request.getRequestId()
                                                                     + ", className: " + this.request.getClassName()
                                                                     + ", methodName: " + this.request.getMethodName());
         }
     }
 
-    /**
-     * 自定义获取许可锁, 用于done和get方法的互斥: 继承了AQS就可以拥有共享变量和同步队列
-     */
-    class Sync extends AbstractQueuedSynchronizer {
-
-        private static final long serialVersionUID = 3247758605222400071L;
-
-        /**
-         * 已完成: 1代表已完成, 0代表pending, -1代表已获取 => 其实随便传什么都可以, 反正底层都是AQS实现, 与传的无关
-         */
-        private final int done = 1;
-
-        /**
-         * 等待
-         */
-        private final int pending = 0;
-
-        /**
-         * 获取许可
-         * @param acquires
-         * @return
-         */
-        @Override
-        protected boolean tryAcquire(int acquires) {
-            return getState() == done? true : false;
-        }
-
-        /**
-         * 释放许可
-         * @param arg
-         * @return
-         */
-        @Override
-        protected boolean tryRelease(int arg) {
-            if(getState() == pending) {
-                if(compareAndSetState(pending, done)) {
-                    return true;
-                }
-            }
-            return false;
-        }
+    public RpcRequest getRequest() {
+        return request;
+    }
 
-        /**
-         * 判断是否属于已完成状态
-         * @return
-         */
-        public boolean isDone() {
-            return getState() == done;
-        }
+    public long getStartNanos() {
+        return startNanos;
     }
 }
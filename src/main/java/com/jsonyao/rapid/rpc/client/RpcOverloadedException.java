@@ -0,0 +1,13 @@
+package com.jsonyao.rapid.rpc.client;
+
+/**
+ * 基于Netty实现RPC框架: 服务端过载异常 => 服务端因并发限制或者排队已满拒绝了请求, 请求没有执行, 换一个地址重试是安全的
+ */
+public class RpcOverloadedException extends RpcException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RpcOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,13 @@
+package com.jsonyao.rapid.rpc.client;
+
+/**
+ * 基于Netty实现RPC框架: RPC调用超时异常
+ */
+public class RpcTimeoutException extends RpcException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RpcTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,116 @@
+package com.jsonyao.rapid.rpc.client.cluster;
+
+import com.jsonyao.rapid.rpc.client.RpcBudget;
+import com.jsonyao.rapid.rpc.client.RpcClientHandler;
+import com.jsonyao.rapid.rpc.client.RpcConnectManager;
+import com.jsonyao.rapid.rpc.client.RpcException;
+import com.jsonyao.rapid.rpc.client.RpcFuture;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于Netty实现RPC框架: 集群容错策略的公共部分
+ *      1. 每次调用向Client级预算存入一次正常请求, 重试、并行、对冲等额外请求都需要从预算中申请
+ *      2. 额外请求一律使用DIRECT_EXECUTOR: 结果汇总在IO线程上完成, 只有最终结果在调用方指定的线程池中回调
+ *      3. 汇总结果完成(胜出、失败或者被调用方取消)后, 仍未完成的请求一并取消
+ */
+public abstract class AbstractClusterInvoker implements ClusterInvoker {
+
+    protected final RpcConnectManager connectManager;
+
+    /**
+     * Client级额外请求预算: 所有集群容错策略共用
+     */
+    protected final RpcBudget budget;
+
+    /**
+     * 统计: 发出的额外请求数、因预算不足放弃的额外请求数
+     */
+    private final LongAdder extraRequests = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    protected AbstractClusterInvoker(RpcConnectManager connectManager) {
+        this.connectManager = connectManager;
+        this.budget = connectManager.getBudget();
+    }
+
+    @Override
+    public RpcFuture invoke(RpcRequest request, long timeoutMillis, Executor callbackExecutor) {
+        budget.deposit();
+        RpcClientHandler handler = connectManager.chooseHandler(request);
+        if(handler == null) {
+            // 连接管理器已经关闭
+            RpcFuture rpcFuture = new RpcFuture(request, callbackExecutor);
+            rpcFuture.fail(new RpcException("rpc connect manager is stopped, className: " + request.getClassName()));
+            return rpcFuture;
+        }
+        return doInvoke(handler, request, timeoutMillis, callbackExecutor);
+    }
+
+    /**
+     * 发起调用
+     * @param handler 负载均衡选出的第一个连接
+     * @param request
+     * @param timeoutMillis
+     * @param callbackExecutor
+     * @return
+     */
+    protected abstract RpcFuture doInvoke(RpcClientHandler handler, RpcRequest request, long timeoutMillis, Executor callbackExecutor);
+
+    /**
+     * 申请一个额外请求的名额
+     * @return 预算不足时返回false
+     */
+    protected boolean acquireBudget() {
+        if(budget.tryAcquire()) {
+            extraRequests.increment();
+            return true;
+        }
+        budgetExhausted.increment();
+        return false;
+    }
+
+    /**
+     * 是否Client端异常: 超时、连接关闭、发送失败等, 请求可能根本没有到达Server端, 可以换地址再试
+     * @param cause
+     * @return
+     */
+    protected static boolean isClientError(Throwable cause) {
+        return cause instanceof RpcException;
+    }
+
+    /**
+     * 汇总结果完成后取消仍未完成的请求: Server端跳过还在排队的请求, 不再写回没有人读取的响应
+     *      同一个请求的多份都由集群容错策略发出, 取消时允许Server端中断(还需要服务本身开启)
+     * @param result
+     * @param attempt
+     * @return attempt
+     */
+    protected static RpcFuture cancelWhenDone(RpcFuture result, final RpcFuture attempt) {
+        result.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable cause) {
+                if(!attempt.isDone()) {
+                    attempt.cancel(true);
+                }
+            }
+        });
+        return attempt;
+    }
+
+    protected static Throwable unwrap(Throwable cause) {
+        return cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+    }
+
+    public long getExtraRequests() {
+        return extraRequests.sum();
+    }
+
+    public long getBudgetExhausted() {
+        return budgetExhausted.sum();
+    }
+}
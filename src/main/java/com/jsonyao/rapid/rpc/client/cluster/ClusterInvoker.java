@@ -0,0 +1,46 @@
+package com.jsonyao.rapid.rpc.client.cluster;
+
+import com.jsonyao.rapid.rpc.client.RpcConnectManager;
+import com.jsonyao.rapid.rpc.client.RpcFuture;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 基于Netty实现RPC框架: Client端集群容错SPI => 位于代理和连接管理器之间, 决定一次调用发往哪些地址、失败后怎么处理
+ *      每个连接管理器按接口级和方法级配置各创建一个实例, 实现类需要线程安全, 并且不能阻塞调用线程以外的线程
+ */
+public interface ClusterInvoker {
+
+    /**
+     * 发起一次调用
+     * @param request
+     * @param timeoutMillis 每次请求的超时时间(毫秒)
+     * @param callbackExecutor 返回的RpcFuture回调的执行线程池
+     * @return 整个调用完成的Future
+     */
+    RpcFuture invoke(RpcRequest request, long timeoutMillis, Executor callbackExecutor);
+
+    /**
+     * 创建集群容错策略
+     * @param type
+     * @param connectManager
+     * @param retries 失败转移时的最大重试次数
+     * @param forks 并行调用的地址数
+     * @param hedgingDelayMillis 对冲前的等待时间(毫秒), 0代表使用方法最近的p95延迟
+     * @return
+     */
+    static ClusterInvoker newClusterInvoker(ClusterType type, RpcConnectManager connectManager, int retries, int forks, long hedgingDelayMillis) {
+        switch (type) {
+            case FAILOVER:
+                return new FailoverClusterInvoker(connectManager, retries);
+            case FORKING:
+                return new ForkingClusterInvoker(connectManager, forks);
+            case HEDGING:
+                return new HedgingClusterInvoker(connectManager, hedgingDelayMillis);
+            case FAILFAST:
+            default:
+                return new FailfastClusterInvoker(connectManager);
+        }
+    }
+}
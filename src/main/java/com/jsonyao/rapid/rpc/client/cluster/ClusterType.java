@@ -0,0 +1,28 @@
+package com.jsonyao.rapid.rpc.client.cluster;
+
+/**
+ * 基于Netty实现RPC框架: Client端集群容错策略
+ */
+public enum ClusterType {
+
+    /**
+     * 快速失败: 只调用一次, 失败立即抛出
+     */
+    FAILFAST,
+
+    /**
+     * 失败转移: Client端异常(超时、连接关闭、发送失败)时换一个地址重试, 次数受retries和重试预算限制, 适合幂等方法
+     */
+    FAILOVER,
+
+    /**
+     * 并行调用: 同时调用forks个不同的地址, 第一个成功的结果胜出, 全部失败才失败, 适合实时性要求高的读操作
+     */
+    FORKING,
+
+    /**
+     * 对冲: 等待固定时间或者方法最近的p95延迟后还没有响应时, 向另一个地址再发一份, 先到的响应胜出, 只能用于幂等方法
+     */
+    HEDGING
+
+}
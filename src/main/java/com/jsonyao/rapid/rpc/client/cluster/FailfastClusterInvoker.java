@@ -0,0 +1,70 @@
+package com.jsonyao.rapid.rpc.client.cluster;
+
+import com.jsonyao.rapid.rpc.client.RpcClientHandler;
+import com.jsonyao.rapid.rpc.client.RpcConnectManager;
+import com.jsonyao.rapid.rpc.client.RpcFuture;
+import com.jsonyao.rapid.rpc.client.RpcOverloadedException;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于Netty实现RPC框架: 快速失败 => 只调用一次, 直接返回连接上的Future, 没有额外开销
+ *      例外: 开启retryOnOverloaded时, 服务端明确返回过载(请求没有执行)后立即换一个地址重试一次, 不必等到超时
+ */
+public class FailfastClusterInvoker extends AbstractClusterInvoker {
+
+    private final boolean retryOnOverloaded;
+
+    public FailfastClusterInvoker(RpcConnectManager connectManager) {
+        super(connectManager);
+        this.retryOnOverloaded = connectManager.getOptions().isRetryOnOverloaded();
+    }
+
+    @Override
+    protected RpcFuture doInvoke(RpcClientHandler handler, final RpcRequest request, final long timeoutMillis, Executor callbackExecutor) {
+        if(!retryOnOverloaded) {
+            return handler.sendRequest(request, timeoutMillis, callbackExecutor);
+        }
+        final RpcFuture result = new RpcFuture(request, callbackExecutor);
+        final SocketAddress overloaded = handler.getRemotePeer();
+        cancelWhenDone(result, handler.sendRequest(request, timeoutMillis, RpcFuture.DIRECT_EXECUTOR)).whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable cause) {
+                Throwable error = unwrap(cause);
+                if(error instanceof RpcOverloadedException) {
+                    // 先申请预算再选择: 选择半开的连接会占用它的探测名额, 选中之后必须发出请求
+                    long remainingMillis = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - result.getStartNanos());
+                    RpcClientHandler next = remainingMillis > 0 && acquireBudget() ? connectManager.chooseHandler(request, Collections.singletonList(overloaded)) : null;
+                    if(next != null) {
+                        forward(cancelWhenDone(result, next.sendRequest(request.copy(), remainingMillis, RpcFuture.DIRECT_EXECUTOR)), result);
+                        return;
+                    }
+                }
+                complete(result, value, error);
+            }
+        });
+        return result;
+    }
+
+    private static void forward(RpcFuture attempt, final RpcFuture result) {
+        attempt.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable cause) {
+                complete(result, value, unwrap(cause));
+            }
+        });
+    }
+
+    private static void complete(RpcFuture result, Object value, Throwable error) {
+        if(error == null) {
+            result.complete(value);
+        } else {
+            result.fail(error);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.jsonyao.rapid.rpc.client.cluster;
+
+import com.jsonyao.rapid.rpc.client.RpcClientHandler;
+import com.jsonyao.rapid.rpc.client.RpcConnectManager;
+import com.jsonyao.rapid.rpc.client.RpcFuture;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+import com.jsonyao.rapid.rpc.transport.RpcContext;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于Netty实现RPC框架: 失败转移
+ *      1. 只有Client端异常(超时、连接关闭、发送失败)才重试, Server端抛出的业务异常直接返回
+ *      2. 优先换一个没有调用过的地址, 所有地址都调用过时再从全部可用地址中选择
+ *      3. 重试次数不超过retries, 并且每次重试都要从Client级预算中申请: 故障期间不会把负载放大retries倍
+ *      4. 每次请求使用完整的超时时间, 最坏情况下调用方等待(retries + 1) * timeout
+ *      5. 在服务方法内部发起的嵌套调用受上游截止时间约束: 每次请求的超时时间不超过剩余时间, 截止时间已过时不再重试
+ */
+public class FailoverClusterInvoker extends AbstractClusterInvoker {
+
+    private final int retries;
+
+    public FailoverClusterInvoker(RpcConnectManager connectManager, int retries) {
+        super(connectManager);
+        this.retries = Math.max(0, retries);
+    }
+
+    @Override
+    protected RpcFuture doInvoke(RpcClientHandler handler, RpcRequest request, long timeoutMillis, Executor callbackExecutor) {
+        RpcFuture result = new RpcFuture(request, callbackExecutor);
+        // 上游截止时间只能在调用线程上读取: 重试发生在IO线程上
+        long deadlineNanos = RpcContext.getContext().getDeadlineNanos();
+        attempt(handler, request, timeoutMillis, deadlineNanos, result, new ArrayList<SocketAddress>(), 0);
+        return result;
+    }
+
+    /**
+     * 发起一次请求: 失败时在IO线程上直接发起下一次重试, 不阻塞任何线程
+     *      tried只在前一次请求完成后才被下一次请求访问, 不需要加锁
+     */
+    private void attempt(RpcClientHandler handler, final RpcRequest request, final long timeoutMillis, final long deadlineNanos,
+                         final RpcFuture result, final List<SocketAddress> tried, final int retry) {
+        tried.add(handler.getRemotePeer());
+        long attemptTimeoutMillis = deadlineNanos == 0 ? timeoutMillis : Math.min(timeoutMillis, remainingMillis(deadlineNanos));
+        RpcFuture attempt = cancelWhenDone(result, handler.sendRequest(retry == 0 ? request : request.copy(), attemptTimeoutMillis, RpcFuture.DIRECT_EXECUTOR));
+        attempt.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable cause) {
+                if(cause == null) {
+                    result.complete(value);
+                    return;
+                }
+                Throwable error = unwrap(cause);
+                if(!isClientError(error) || retry >= retries || (deadlineNanos != 0 && remainingMillis(deadlineNanos) <= 0) || !acquireBudget()) {
+                    result.fail(error);
+                    return;
+                }
+                RpcClientHandler next = connectManager.chooseHandler(request, tried);
+                if(next == null) {
+                    next = connectManager.chooseHandler(request, Collections.<SocketAddress>emptyList());
+                }
+                if(next == null) {
+                    result.fail(error);
+                    return;
+                }
+                attempt(next, request, timeoutMillis, deadlineNanos, result, tried, retry + 1);
+            }
+        });
+    }
+
+    private static long remainingMillis(long deadlineNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+}
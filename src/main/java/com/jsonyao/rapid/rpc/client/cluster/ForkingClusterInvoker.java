@@ -0,0 +1,65 @@
+package com.jsonyao.rapid.rpc.client.cluster;
+
+import com.jsonyao.rapid.rpc.client.RpcClientHandler;
+import com.jsonyao.rapid.rpc.client.RpcConnectManager;
+import com.jsonyao.rapid.rpc.client.RpcFuture;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于Netty实现RPC框架: 并行调用
+ *      1. 同时调用forks个不同的地址, 第一个成功的结果胜出, 落后的请求被取消
+ *      2. 所有请求都失败时才失败, 抛出最后一个失败的异常
+ *      3. 第一个之外的每个请求都要从Client级预算中申请: 预算不足时少发几份, 至少调用一次
+ */
+public class ForkingClusterInvoker extends AbstractClusterInvoker {
+
+    private final int forks;
+
+    public ForkingClusterInvoker(RpcConnectManager connectManager, int forks) {
+        super(connectManager);
+        this.forks = Math.max(1, forks);
+    }
+
+    @Override
+    protected RpcFuture doInvoke(RpcClientHandler handler, RpcRequest request, long timeoutMillis, Executor callbackExecutor) {
+        // 1. 先选好所有地址, 再统一发送: 未完成数在发送前确定, 不会有请求提前把它减到0
+        List<RpcClientHandler> handlers = new ArrayList<RpcClientHandler>(forks);
+        List<SocketAddress> chosen = new ArrayList<SocketAddress>(forks);
+        handlers.add(handler);
+        chosen.add(handler.getRemotePeer());
+        // 先申请预算再选择: 选择半开的连接会占用它的探测名额, 选中之后必须发出请求
+        while (handlers.size() < forks && acquireBudget()) {
+            RpcClientHandler next = connectManager.chooseHandler(request, chosen);
+            if(next == null) {
+                break;
+            }
+            handlers.add(next);
+            chosen.add(next.getRemotePeer());
+        }
+
+        // 2. 并行发送
+        final RpcFuture result = new RpcFuture(request, callbackExecutor);
+        final AtomicInteger outstanding = new AtomicInteger(handlers.size());
+        for (int i = 0; i < handlers.size(); i++) {
+            RpcFuture attempt = cancelWhenDone(result, handlers.get(i).sendRequest(i == 0 ? request : request.copy(), timeoutMillis, RpcFuture.DIRECT_EXECUTOR));
+            attempt.whenComplete(new BiConsumer<Object, Throwable>() {
+                @Override
+                public void accept(Object value, Throwable cause) {
+                    if(cause == null) {
+                        result.complete(value);
+                    } else if(outstanding.decrementAndGet() == 0) {
+                        result.fail(unwrap(cause));
+                    }
+                }
+            });
+        }
+        return result;
+    }
+}
@@ -0,0 +1,156 @@
+package com.jsonyao.rapid.rpc.client.cluster;
+
+import com.jsonyao.rapid.rpc.client.RpcClientHandler;
+import com.jsonyao.rapid.rpc.client.RpcConnectManager;
+import com.jsonyao.rapid.rpc.client.RpcFuture;
+import com.jsonyao.rapid.rpc.client.RpcTimeoutException;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+import com.jsonyao.rapid.rpc.utils.LatencyHistogram;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于Netty实现RPC框架: 对冲请求, 降低单个慢节点(GC停顿、邻居干扰)带来的长尾延迟
+ *      1. 只能用于幂等方法: 请求发出后等待固定时间或者该方法最近的p95延迟, 还没有响应时向另一个地址再发一份
+ *      2. 先到的响应胜出, 落后的请求被取消, 已经等待的时间作为延迟下界计入它所在连接的统计
+ *      3. 对冲请求需要从Client级预算中申请: 故障期间所有请求都变慢时不会把负载放大一倍
+ *      4. 两份请求共用原始的超时时间点: 对冲不会延长调用方等待的时间
+ */
+public class HedgingClusterInvoker extends AbstractClusterInvoker {
+
+    /**
+     * 没有配置固定等待时间时使用的延迟分位数
+     */
+    private static final double HEDGING_PERCENTILE = 0.95;
+
+    /**
+     * 估算分位数需要的最少样本数: 样本不足时不对冲
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * 发出对冲请求前的等待时间(毫秒), 0代表使用方法最近的p95延迟
+     */
+    private final long delayMillis;
+
+    /**
+     * 方法名-延迟直方图: 接口级配置时按方法分别统计
+     */
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    /**
+     * 对冲请求胜出的次数
+     */
+    private final LongAdder hedgeWins = new LongAdder();
+
+    public HedgingClusterInvoker(RpcConnectManager connectManager, long delayMillis) {
+        super(connectManager);
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    protected RpcFuture doInvoke(RpcClientHandler primary, final RpcRequest request, final long timeoutMillis, Executor callbackExecutor) {
+        final LatencyHistogram histogram = histogram(request.getMethodName());
+        final RpcFuture result = new RpcFuture(request, callbackExecutor);
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        attach(cancelWhenDone(result, primary.sendRequest(request, timeoutMillis, RpcFuture.DIRECT_EXECUTOR)), result, histogram, outstanding, false);
+
+        long delayNanos = delayMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(delayMillis) : histogram.percentile(HEDGING_PERCENTILE, MIN_SAMPLES);
+        if(delayNanos <= 0 || delayNanos >= TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+            return result;
+        }
+        final SocketAddress excluded = primary.getRemotePeer();
+        RpcClientHandler.timer().newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) throws Exception {
+                if(result.isDone()) {
+                    return;
+                }
+                long remainingMillis = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - result.getStartNanos());
+                if(remainingMillis <= 0) {
+                    return;
+                }
+                // 只发往其他地址: 同一个地址上的慢请求大概率还会慢
+                // 先申请预算再选择: 选择半开的连接会占用它的探测名额, 选中之后必须发出请求
+                if(!acquireBudget()) {
+                    return;
+                }
+                RpcClientHandler handler = connectManager.chooseHandler(request, Collections.singletonList(excluded));
+                if(handler == null) {
+                    return;
+                }
+                outstanding.incrementAndGet();
+                attach(cancelWhenDone(result, handler.sendRequest(request.copy(), remainingMillis, RpcFuture.DIRECT_EXECUTOR)), result, histogram, outstanding, true);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * 一份请求完成时: 有响应(包括Server端抛出的异常)就完成结果, Client端异常(超时、连接关闭)只有在最后一份请求也失败时才完成结果
+     */
+    private void attach(final RpcFuture attempt, final RpcFuture result, final LatencyHistogram histogram, final AtomicInteger outstanding, final boolean hedge) {
+        attempt.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable cause) {
+                // 落败后被取消: 耗时不是完整的延迟, 不计入直方图
+                if(attempt.isCancelled()) {
+                    return;
+                }
+                Throwable error = unwrap(cause);
+                // 超时说明延迟至少有这么长, 必须计入直方图, 否则慢的尾部被丢掉, 对冲延迟会越估越小
+                if(error instanceof RpcTimeoutException) {
+                    histogram.record(System.nanoTime() - attempt.getStartNanos());
+                }
+                if(isClientError(error)) {
+                    if(outstanding.decrementAndGet() == 0) {
+                        result.fail(error);
+                    }
+                    return;
+                }
+                histogram.record(System.nanoTime() - attempt.getStartNanos());
+                boolean won = error == null ? result.complete(value) : result.completeExceptionally(error);
+                if(won && hedge) {
+                    hedgeWins.increment();
+                }
+            }
+        });
+    }
+
+    private LatencyHistogram histogram(String methodName) {
+        LatencyHistogram histogram = histograms.get(methodName);
+        if(histogram == null) {
+            histogram = new LatencyHistogram(10000);
+            LatencyHistogram previous = histograms.putIfAbsent(methodName, histogram);
+            if(previous != null) {
+                histogram = previous;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * 方法最近的延迟分位数
+     * @param methodName
+     * @param percentile
+     * @return 纳秒, 样本不足时返回-1
+     */
+    public long getPercentile(String methodName, double percentile) {
+        LatencyHistogram histogram = histograms.get(methodName);
+        return histogram == null ? -1 : histogram.percentile(percentile, MIN_SAMPLES);
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+}
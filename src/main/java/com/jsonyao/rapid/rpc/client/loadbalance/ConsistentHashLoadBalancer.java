@@ -0,0 +1,230 @@
+package com.jsonyao.rapid.rpc.client.loadbalance;
+
+import com.jsonyao.rapid.rpc.client.RpcEndpoint;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.*;
+
+/**
+ * 基于Netty实现RPC框架: 一致性哈希(虚拟节点环)
+ *      1. 以指定下标的参数作为哈希键, 同一个键总是落到同一个地址上, 保证服务端本地缓存的命中率
+ *      2. 每个地址按 权重 * VIRTUAL_NODES 个虚拟节点分布在环上, 虚拟节点的位置只由地址决定
+ *      3. 可用地址变化时只增删变化的地址的虚拟节点, 其他地址的虚拟节点位置不变, 所以只有约1/N的键会迁移
+ *      4. 环以排好序的数组发布, 选择时二分查找, 不加锁
+ *      5. 需要跳过某些地址时沿环顺时针找下一个不同的地址, 环本身不变
+ */
+public class ConsistentHashLoadBalancer implements LoadBalancer {
+
+    private static final int VIRTUAL_NODES = 160;
+
+    private final int hashArgument;
+
+    /**
+     * 虚拟节点hash-地址: 只在地址变化时增量修改
+     */
+    private final TreeMap<Long, InetSocketAddress> circle = new TreeMap<>();
+
+    /**
+     * 地址-已经放到环上的权重
+     */
+    private final Map<InetSocketAddress, Integer> weights = new HashMap<>();
+
+    /**
+     * 虚拟节点hash-哈希冲突中后到的地址: 占有者移除后按先后顺序接手, 环不依赖于地址的加入顺序
+     */
+    private final Map<Long, List<InetSocketAddress>> contenders = new HashMap<>();
+
+    private volatile Ring ring = new Ring(null, new long[0], new RpcEndpoint[0]);
+
+    public ConsistentHashLoadBalancer() {
+        this(0);
+    }
+
+    /**
+     * @param hashArgument 作为哈希键的参数下标
+     */
+    public ConsistentHashLoadBalancer(int hashArgument) {
+        this.hashArgument = hashArgument;
+    }
+
+    @Override
+    public RpcEndpoint select(RpcEndpoint[] endpoints, RpcRequest request) {
+        Ring ring = ring(endpoints);
+        if(ring.owners.length == 0) {
+            return null;
+        }
+        return ring.owners[indexOf(ring, request)];
+    }
+
+    @Override
+    public RpcEndpoint select(RpcEndpoint[] endpoints, RpcRequest request, Collection<? extends SocketAddress> excluded) {
+        Ring ring = ring(endpoints);
+        int size = ring.owners.length;
+        if(size == 0) {
+            return null;
+        }
+        int start = indexOf(ring, request);
+        for (int i = 0; i < size; i++) {
+            RpcEndpoint owner = ring.owners[(start + i) % size];
+            if(!excluded.contains(owner.getAddress())) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    private Ring ring(RpcEndpoint[] endpoints) {
+        Ring ring = this.ring;
+        return ring.endpoints == endpoints ? ring : update(endpoints);
+    }
+
+    /**
+     * 哈希键在环上顺时针遇到的第一个虚拟节点
+     * @param ring
+     * @param request
+     * @return
+     */
+    private int indexOf(Ring ring, RpcRequest request) {
+        long hash = hash(key(request));
+        int index = Arrays.binarySearch(ring.hashes, hash);
+        if(index < 0) {
+            index = -index - 1;
+            if(index == ring.hashes.length) {
+                index = 0;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 可用地址快照发生了变化: 只增删变化的地址的虚拟节点, 然后重新发布环
+     * @param endpoints
+     * @return
+     */
+    private synchronized Ring update(RpcEndpoint[] endpoints) {
+        if(this.ring.endpoints == endpoints) {
+            return this.ring;
+        }
+        Map<InetSocketAddress, RpcEndpoint> current = new HashMap<>(endpoints.length * 2);
+        for (RpcEndpoint endpoint : endpoints) {
+            current.put(endpoint.getAddress(), endpoint);
+        }
+
+        // 1. 移除已经不可用, 或者权重变化了的地址的虚拟节点
+        Iterator<Map.Entry<InetSocketAddress, Integer>> iterator = weights.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<InetSocketAddress, Integer> entry = iterator.next();
+            RpcEndpoint endpoint = current.get(entry.getKey());
+            if(endpoint == null || endpoint.getWeight() != entry.getValue()) {
+                removeVirtualNodes(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        // 2. 为新增的地址添加虚拟节点
+        for (RpcEndpoint endpoint : endpoints) {
+            if(!weights.containsKey(endpoint.getAddress())) {
+                addVirtualNodes(endpoint.getAddress(), endpoint.getWeight());
+                weights.put(endpoint.getAddress(), endpoint.getWeight());
+            }
+        }
+
+        // 3. 发布排好序的环: 虚拟节点指向当前快照中的RpcEndpoint
+        long[] hashes = new long[circle.size()];
+        RpcEndpoint[] owners = new RpcEndpoint[circle.size()];
+        int i = 0;
+        for (Map.Entry<Long, InetSocketAddress> entry : circle.entrySet()) {
+            hashes[i] = entry.getKey();
+            owners[i] = current.get(entry.getValue());
+            i++;
+        }
+        this.ring = new Ring(endpoints, hashes, owners);
+        return this.ring;
+    }
+
+    private void addVirtualNodes(InetSocketAddress address, int weight) {
+        for (int i = 0; i < weight * VIRTUAL_NODES; i++) {
+            // 哈希冲突时先到先得, 后到的地址记录下来, 占有者移除时由它接手
+            long hash = hash(address + "#" + i);
+            InetSocketAddress owner = circle.get(hash);
+            if(owner == null) {
+                circle.put(hash, address);
+            } else if(!owner.equals(address)) {
+                List<InetSocketAddress> list = contenders.get(hash);
+                if(list == null) {
+                    list = new ArrayList<>(1);
+                    contenders.put(hash, list);
+                }
+                list.add(address);
+            }
+        }
+    }
+
+    private void removeVirtualNodes(InetSocketAddress address, int weight) {
+        for (int i = 0; i < weight * VIRTUAL_NODES; i++) {
+            long hash = hash(address + "#" + i);
+            List<InetSocketAddress> list = contenders.get(hash);
+            if(list != null) {
+                list.removeAll(Collections.singleton(address));
+            }
+            if(address.equals(circle.get(hash))) {
+                if(list == null || list.isEmpty()) {
+                    circle.remove(hash);
+                } else {
+                    circle.put(hash, list.remove(0));
+                }
+            }
+            if(list != null && list.isEmpty()) {
+                contenders.remove(hash);
+            }
+        }
+    }
+
+    private String key(RpcRequest request) {
+        if(request == null) {
+            return "";
+        }
+        Object[] parameters = request.getParameters();
+        if(parameters == null || hashArgument >= parameters.length) {
+            return "";
+        }
+        return String.valueOf(parameters[hashArgument]);
+    }
+
+    /**
+     * 64位FNV-1a + 混淆: 对短字符串分布足够均匀, 且不需要分配对象
+     * @param key
+     * @return
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * 不可变的环: 与生成它的可用地址快照一一对应
+     */
+    private static final class Ring {
+
+        private final RpcEndpoint[] endpoints;
+        private final long[] hashes;
+        private final RpcEndpoint[] owners;
+
+        private Ring(RpcEndpoint[] endpoints, long[] hashes, RpcEndpoint[] owners) {
+            this.endpoints = endpoints;
+            this.hashes = hashes;
+            this.owners = owners;
+        }
+    }
+}
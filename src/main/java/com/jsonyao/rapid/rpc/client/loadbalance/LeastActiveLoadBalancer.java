@@ -0,0 +1,52 @@
+package com.jsonyao.rapid.rpc.client.loadbalance;
+
+import com.jsonyao.rapid.rpc.client.RpcEndpoint;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于Netty实现RPC框架: 最少活跃
+ *      1. 第一遍找出未完成请求数最少的地址, 同时累计这些地址的权重
+ *      2. 只有一个时直接返回, 否则在这些地址中按权重随机
+ */
+public class LeastActiveLoadBalancer implements LoadBalancer {
+
+    @Override
+    public RpcEndpoint select(RpcEndpoint[] endpoints, RpcRequest request) {
+        if(endpoints.length == 1) {
+            return endpoints[0];
+        }
+        int leastActive = Integer.MAX_VALUE;
+        int leastCount = 0;
+        int totalWeight = 0;
+        RpcEndpoint first = null;
+        for (RpcEndpoint endpoint : endpoints) {
+            int active = endpoint.getPendingCount();
+            if(active < leastActive) {
+                leastActive = active;
+                leastCount = 1;
+                totalWeight = endpoint.getWeight();
+                first = endpoint;
+            } else if(active == leastActive) {
+                leastCount++;
+                totalWeight += endpoint.getWeight();
+            }
+        }
+        if(leastCount == 1) {
+            return first;
+        }
+
+        // 按权重随机: 两遍之间未完成请求数可能已经变化, 找不到时退回第一个
+        int offset = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (RpcEndpoint endpoint : endpoints) {
+            if(endpoint.getPendingCount() == leastActive) {
+                offset -= endpoint.getWeight();
+                if(offset < 0) {
+                    return endpoint;
+                }
+            }
+        }
+        return first;
+    }
+}
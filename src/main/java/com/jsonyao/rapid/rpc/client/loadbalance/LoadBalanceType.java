@@ -0,0 +1,28 @@
+package com.jsonyao.rapid.rpc.client.loadbalance;
+
+/**
+ * 基于Netty实现RPC框架: Client端负载均衡策略
+ */
+public enum LoadBalanceType {
+
+    /**
+     * 平滑加权轮询: 按权重比例分配请求, 且同一个地址的请求不会连续扎堆
+     */
+    ROUND_ROBIN,
+
+    /**
+     * 最少活跃: 选择未完成请求数最少的地址, 相同时按权重随机
+     */
+    LEAST_ACTIVE,
+
+    /**
+     * 随机选两个地址, 比较 延迟EWMA * (未完成请求数 + 1) / 权重, 选较小的一个
+     */
+    P2C_EWMA,
+
+    /**
+     * 一致性哈希: 按指定参数路由, 同一个键总是落到同一个地址上
+     */
+    CONSISTENT_HASH
+
+}
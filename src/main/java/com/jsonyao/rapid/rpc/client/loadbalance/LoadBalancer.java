@@ -0,0 +1,71 @@
+package com.jsonyao.rapid.rpc.client.loadbalance;
+
+import com.jsonyao.rapid.rpc.client.RpcEndpoint;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 基于Netty实现RPC框架: Client端负载均衡SPI => 每个连接管理器一个实例, 实现类需要线程安全
+ */
+public interface LoadBalancer {
+
+    /**
+     * 从可用地址中选择一个
+     * @param endpoints 可用的地址, 不为空, 调用方不能修改
+     * @param request 本次请求
+     * @return
+     */
+    RpcEndpoint select(RpcEndpoint[] endpoints, RpcRequest request);
+
+    /**
+     * 从可用地址中选择一个, 跳过指定的地址: 用于重试、对冲等需要换地址的场景
+     *      endpoints仍然是发布的可用地址快照, 有状态的实现(一致性哈希的环、轮询的当前权重)需要覆盖该方法, 不能因为临时数组重建状态
+     *      默认实现过滤出临时数组再交给select, 只适用于无状态的实现
+     * @param endpoints 可用的地址, 不为空, 调用方不能修改
+     * @param request 本次请求
+     * @param excluded 不选择这些地址
+     * @return 没有其他地址时返回null
+     */
+    default RpcEndpoint select(RpcEndpoint[] endpoints, RpcRequest request, Collection<? extends SocketAddress> excluded) {
+        List<RpcEndpoint> candidates = new ArrayList<RpcEndpoint>(endpoints.length);
+        for (RpcEndpoint endpoint : endpoints) {
+            if(!excluded.contains(endpoint.getAddress())) {
+                candidates.add(endpoint);
+            }
+        }
+        return candidates.isEmpty() ? null : select(candidates.toArray(new RpcEndpoint[0]), request);
+    }
+
+    /**
+     * 创建负载均衡器
+     * @param type
+     * @return
+     */
+    static LoadBalancer newLoadBalancer(LoadBalanceType type) {
+        return newLoadBalancer(type, 0);
+    }
+
+    /**
+     * 创建负载均衡器
+     * @param type
+     * @param hashArgument 一致性哈希时作为哈希键的参数下标
+     * @return
+     */
+    static LoadBalancer newLoadBalancer(LoadBalanceType type, int hashArgument) {
+        switch (type) {
+            case CONSISTENT_HASH:
+                return new ConsistentHashLoadBalancer(hashArgument);
+            case ROUND_ROBIN:
+                return new RoundRobinLoadBalancer();
+            case P2C_EWMA:
+                return new P2CEwmaLoadBalancer();
+            case LEAST_ACTIVE:
+            default:
+                return new LeastActiveLoadBalancer();
+        }
+    }
+}
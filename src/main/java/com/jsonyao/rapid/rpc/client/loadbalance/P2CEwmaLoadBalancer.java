@@ -0,0 +1,39 @@
+package com.jsonyao.rapid.rpc.client.loadbalance;
+
+import com.jsonyao.rapid.rpc.client.RpcEndpoint;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于Netty实现RPC框架: Power of Two Choices + 延迟EWMA
+ *      1. 随机选出两个不同的地址, 只比较这两个, 选择开销与地址数无关, 也不会像全局最优那样让所有调用方同时涌向同一个地址
+ *      2. 负载 = 延迟EWMA * (未完成请求数 + 1) / 权重, 变慢或者堆积的地址会自然地少分到请求
+ */
+public class P2CEwmaLoadBalancer implements LoadBalancer {
+
+    @Override
+    public RpcEndpoint select(RpcEndpoint[] endpoints, RpcRequest request) {
+        int size = endpoints.length;
+        if(size == 1) {
+            return endpoints[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(size);
+        int b = random.nextInt(size - 1);
+        if(b >= a) {
+            b++;
+        }
+        RpcEndpoint first = endpoints[a];
+        RpcEndpoint second = endpoints[b];
+
+        // 任意一个还没有延迟样本(比如新上线的地址): 只比较未完成请求数, 避免新地址因为延迟为0被瞬间打满
+        boolean sampled = first.getLatencyEwma() > 0 && second.getLatencyEwma() > 0;
+        return load(first, sampled) <= load(second, sampled) ? first : second;
+    }
+
+    private double load(RpcEndpoint endpoint, boolean sampled) {
+        double latency = sampled ? endpoint.getLatencyEwma() : 1;
+        return latency * (endpoint.getPendingCount() + 1) / endpoint.getWeight();
+    }
+}
@@ -0,0 +1,133 @@
+package com.jsonyao.rapid.rpc.client.loadbalance;
+
+import com.jsonyao.rapid.rpc.client.RpcEndpoint;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于Netty实现RPC框架: 平滑加权轮询(同Nginx)
+ *      1. 每次选择: 所有地址的currentWeight加上各自的权重, 选currentWeight最大的, 被选中的再减去权重总和
+ *      2. 权重5:1:1时的选择序列为 a a b a c a a, 而不是 a a a a a b c
+ *      3. 无锁: 选择序列以权重总和为周期, 每个可用地址快照预先算出一个周期, 选择时只有一次原子自增
+ *      4. 跳过某些地址(重试、对冲)时从当前位置往后找第一个不被跳过的地址, 不移动位置, 不打乱正常请求的轮询序列
+ */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+
+    /**
+     * 一个周期的最大长度: 权重约分后总和仍然超过时按比例缩小
+     */
+    private static final int MAX_SCHEDULE = 4096;
+
+    /**
+     * 在周期中的位置: 所有快照共用, 快照变化时从新周期的对应位置继续
+     */
+    private final AtomicLong position = new AtomicLong();
+
+    /**
+     * 当前快照的选择周期: 快照变化后第一次选择时重新计算, 并发计算的结果相同, 不需要加锁
+     */
+    private volatile Schedule schedule = new Schedule(null, new RpcEndpoint[0]);
+
+    @Override
+    public RpcEndpoint select(RpcEndpoint[] endpoints, RpcRequest request) {
+        if(endpoints.length == 0) {
+            return null;
+        }
+        if(endpoints.length == 1) {
+            return endpoints[0];
+        }
+        RpcEndpoint[] order = schedule(endpoints).order;
+        return order[(int) ((position.getAndIncrement() & Long.MAX_VALUE) % order.length)];
+    }
+
+    @Override
+    public RpcEndpoint select(RpcEndpoint[] endpoints, RpcRequest request, Collection<? extends SocketAddress> excluded) {
+        RpcEndpoint[] order = schedule(endpoints).order;
+        long next = position.get() & Long.MAX_VALUE;
+        for (int i = 0; i < order.length; i++) {
+            RpcEndpoint endpoint = order[(int) ((next + i) % order.length)];
+            if(!excluded.contains(endpoint.getAddress())) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    private Schedule schedule(RpcEndpoint[] endpoints) {
+        Schedule schedule = this.schedule;
+        if(schedule.endpoints != endpoints) {
+            schedule = new Schedule(endpoints, order(endpoints));
+            this.schedule = schedule;
+        }
+        return schedule;
+    }
+
+    /**
+     * 按平滑加权轮询算出一个周期的选择序列
+     * @param endpoints
+     * @return
+     */
+    static RpcEndpoint[] order(RpcEndpoint[] endpoints) {
+        int size = endpoints.length;
+        int[] weights = new int[size];
+        int gcd = 0;
+        for (int i = 0; i < size; i++) {
+            weights[i] = Math.max(1, endpoints[i].getWeight());
+            gcd = gcd(gcd, weights[i]);
+        }
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            weights[i] /= gcd;
+            total += weights[i];
+        }
+        if(total > MAX_SCHEDULE) {
+            long scaled = 0;
+            for (int i = 0; i < size; i++) {
+                weights[i] = (int) Math.max(1, (long) weights[i] * MAX_SCHEDULE / total);
+                scaled += weights[i];
+            }
+            total = scaled;
+        }
+
+        RpcEndpoint[] order = new RpcEndpoint[(int) total];
+        long[] currentWeights = new long[size];
+        for (int n = 0; n < order.length; n++) {
+            int chosen = 0;
+            for (int i = 0; i < size; i++) {
+                currentWeights[i] += weights[i];
+                if(currentWeights[i] > currentWeights[chosen]) {
+                    chosen = i;
+                }
+            }
+            currentWeights[chosen] -= total;
+            order[n] = endpoints[chosen];
+        }
+        return order;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * 不可变的选择周期: 与生成它的可用地址快照一一对应
+     */
+    private static final class Schedule {
+
+        private final RpcEndpoint[] endpoints;
+        private final RpcEndpoint[] order;
+
+        private Schedule(RpcEndpoint[] endpoints, RpcEndpoint[] order) {
+            this.endpoints = endpoints;
+            this.order = order;
+        }
+    }
+}
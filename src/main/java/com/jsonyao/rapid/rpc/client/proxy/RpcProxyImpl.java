@@ -1,14 +1,15 @@
 package com.jsonyao.rapid.rpc.client.proxy;
 
-import com.jsonyao.rapid.rpc.client.RpcClientHandler;
 import com.jsonyao.rapid.rpc.client.RpcConnectManager;
 import com.jsonyao.rapid.rpc.client.RpcFuture;
+import com.jsonyao.rapid.rpc.codec.RpcHandshake;
 import com.jsonyao.rapid.rpc.codec.RpcRequest;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * 基于Netty实现RPC框架: 客户端Consumer代理
@@ -16,9 +17,17 @@ import java.util.concurrent.TimeUnit;
 public class RpcProxyImpl<T> implements InvocationHandler, RpcAsyncProxy {
 
     private Class<T> clazz;
+    /**
+     * 请求超时时间(毫秒)
+     */
     private long timeout;
     private RpcConnectManager rpcConnectManager;
 
+    /**
+     * Method-methodKey: 缓存方法签名, 避免每次调用都拼接字符串
+     */
+    private final Map<Method, String> methodKeyCache = new ConcurrentHashMap<>();
+
     public RpcProxyImpl(RpcConnectManager rpcConnectManager, Class<T> clazz, long timeout) {
         this.clazz = clazz;
         this.timeout = timeout;
@@ -37,18 +46,21 @@ public class RpcProxyImpl<T> implements InvocationHandler, RpcAsyncProxy {
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
         // 1. 设置请求对象
         RpcRequest request = new RpcRequest();
-        request.setRequestId(UUID.randomUUID().toString());
         request.setClassName(method.getDeclaringClass().getName());
         request.setMethodName(method.getName());
         request.setParameterTypes(method.getParameterTypes());
         request.setParameters(args);
+        request.setMethodKey(methodKey(method));
 
-        // 2. 选择一个合适的Client任务处理器 => 取模方式轮训选择业务处理器
-        RpcClientHandler rpcClientHandler = rpcConnectManager.chooseHandler();
-
-        // 3. 发送真正的客户端请求, 并获取返回结果 => 发是异步的发, 但获取是同步阻塞的获取, 所以整体来讲, 还是同步阻塞式的代理调用
-        RpcFuture rpcFuture = rpcClientHandler.sendRequest(request);
-        return rpcFuture.get(timeout, TimeUnit.SECONDS);
+        // 2. 发送真正的客户端请求, 并获取返回结果 => 发是异步的发, 但获取是同步阻塞的获取, 所以整体来讲, 还是同步阻塞式的代理调用
+        // 超时由时间轮负责: 到期后请求从未完成请求表中移除, Future以RpcTimeoutException失败
+        RpcFuture rpcFuture = send(request);
+        try {
+            return rpcFuture.get();
+        } catch (ExecutionException e) {
+            // 直接抛出服务端的异常
+            throw e.getCause();
+        }
     }
 
     /**
@@ -61,7 +73,6 @@ public class RpcProxyImpl<T> implements InvocationHandler, RpcAsyncProxy {
     public RpcFuture call(String funcName, Object... args) {
         // 1. 设置请求对象
         RpcRequest request = new RpcRequest();
-        request.setRequestId(UUID.randomUUID().toString());
         request.setClassName(this.clazz.getName());
         request.setMethodName(funcName);
         request.setParameters(args);
@@ -72,12 +83,33 @@ public class RpcProxyImpl<T> implements InvocationHandler, RpcAsyncProxy {
             parameterTypes[i] = getClassType(args[i]);
         }
         request.setParameterTypes(parameterTypes);
+        request.setMethodKey(RpcHandshake.methodKey(this.clazz.getName(), funcName, parameterTypes));
+
+        // 2. 发送真正的客户端请求, 并获取返回结果 => 发是异步的发, 返回的是Future对象, 所以整体来讲, 是异步式的代理调用
+        return send(request);
+    }
 
-        // 2. 选择一个合适的Client任务处理器 => 取模方式轮训选择业务处理器
-        RpcClientHandler rpcClientHandler = rpcConnectManager.chooseHandler();
+    /**
+     * 发送请求: 由集群容错策略选择地址、处理失败 => 快速失败时按负载均衡策略选择地址, 再选择该地址上未完成请求数最少的连接, 直接发送
+     * @param request
+     * @return
+     */
+    private RpcFuture send(RpcRequest request) {
+        return rpcConnectManager.invoke(request, timeout, rpcConnectManager.getOptions().getCallbackExecutor());
+    }
 
-        // 3. 发送真正的客户端请求, 并获取返回结果 => 发是异步的发, 返回的是Future对象, 所以整体来讲, 是异步式的代理调用
-        return rpcClientHandler.sendRequest(request);
+    /**
+     * 获取方法签名
+     * @param method
+     * @return
+     */
+    private String methodKey(Method method) {
+        String methodKey = methodKeyCache.get(method);
+        if(methodKey == null) {
+            methodKey = RpcHandshake.methodKey(method);
+            methodKeyCache.put(method, methodKey);
+        }
+        return methodKey;
     }
 
     /**
@@ -3,44 +3,46 @@ package com.jsonyao.rapid.rpc.codec;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
 
 import java.util.List;
 
 /**
- * 基于Netty实现RPC框架: 解码器
+ * 基于Netty实现RPC框架: 解码器 => 只解析协议头, 包体以RpcFrame的形式传播给下游handler, 由下游按需反序列化
  */
 public class RpcDecoder extends ByteToMessageDecoder {
 
-    private Class<?> genericClass;
-
-    public RpcDecoder(Class<?> genericClass) {
-        this.genericClass = genericClass;
-    }
-
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        // 数据包格式不正确(必须大于4个字节), 则直接返回
-        if(in.readableBytes() < 4) {
+        // 数据包格式不正确(必须大于协议头长度), 则直接返回
+        if(in.readableBytes() < RpcProtocol.HEADER_LENGTH) {
             return;
         }
 
         // 添加读标志
         in.markReaderIndex();
 
-        // 1、包头(数据包大小)
+        // 1、协议头
+        short magic = in.readShort();
+        byte version = in.readByte();
+        if(magic != RpcProtocol.MAGIC || version != RpcProtocol.VERSION) {
+            throw new CorruptedFrameException("illegal rpc frame, magic: " + magic + ", version: " + version);
+        }
+        byte type = in.readByte();
+        byte serializer = in.readByte();
+        byte status = in.readByte();
+        long requestId = in.readLong();
         int dataLength = in.readInt();
+        if(dataLength < 0) {
+            throw new CorruptedFrameException("illegal rpc frame, dataLength: " + dataLength);
+        }
         if(in.readableBytes() < dataLength) {
             // 如果当前读指针后面的实际内容长度小于包头记录的长度, 则代表还没读完, 重置读指针到标志位
             in.resetReaderIndex();
             return;
         }
 
-        // 2、包体(实际内容)
-        byte[] data = new byte[dataLength];
-        in.readBytes(data);
-        Object obj = Serialization.deserialize(data, genericClass);
-
-        // 然后把反序列化内容添加到buffer中, 传播到下游handler处理 eg => RpcClientHandler
-        out.add(obj);
+        // 2、包体(实际内容): 不做拷贝, 直接切片, 然后传播到下游handler处理 eg => RpcClientHandler
+        out.add(new RpcFrame(type, serializer, status, requestId, in.readRetainedSlice(dataLength)));
     }
 }
@@ -7,18 +7,12 @@ import io.netty.handler.codec.MessageToByteEncoder;
 /**
  * 基于Netty实现RPC框架: 编码器
  */
-public class RpcEncoder extends MessageToByteEncoder<Object> {
-
-    private Class<?> genericClass;
-
-    public RpcEncoder(Class<?> genericClass) {
-        this.genericClass = genericClass;
-    }
+public class RpcEncoder extends MessageToByteEncoder<RpcMessage> {
 
     /**
      * 编码:
-     *      1. 把对应的Java对象进行编码
-     *      2. 之后把内容填充到Buffer中
+     *      1. 写入固定长度的协议头
+     *      2. 把对应的Java对象直接序列化到Buffer中
      *      3. 然后写出到Net中的另外一端
      * @param ctx
      * @param msg
@@ -26,13 +20,21 @@ public class RpcEncoder extends MessageToByteEncoder<Object> {
      * @throws Exception
      */
     @Override
-    protected void encode(ChannelHandlerContext ctx, Object msg, ByteBuf out) throws Exception {
-        if(genericClass.isInstance(msg)) {
-            byte[] data = Serialization.serialize(msg);
+    protected void encode(ChannelHandlerContext ctx, RpcMessage msg, ByteBuf out) throws Exception {
+        // 1、协议头: 包体长度先占位, 写完包体后再回填
+        out.writeShort(RpcProtocol.MAGIC);
+        out.writeByte(RpcProtocol.VERSION);
+        out.writeByte(msg.getType());
+        out.writeByte(msg.getSerializer());
+        out.writeByte(msg.getStatus());
+        out.writeLong(msg.getRequestId());
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
 
-            // 然后写出到Net中的另外一端: 1、包头(数据长度) 2、包体(数据包内容)
-            out.writeInt(data.length);
-            out.writeBytes(data);
+        // 2、包体(数据包内容): 直接序列化到(池化的)out中, 不产生中间字节数组
+        if(msg.getBody() != null) {
+            Serialization.serialize(msg.getBody(), out);
+            out.setInt(lengthIndex, out.writerIndex() - lengthIndex - RpcProtocol.LENGTH_FIELD_LENGTH);
         }
     }
 }
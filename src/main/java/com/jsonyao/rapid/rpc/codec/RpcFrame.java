@@ -0,0 +1,63 @@
+package com.jsonyao.rapid.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * 基于Netty实现RPC框架: 入站数据帧 = 协议头 + 未反序列化的包体
+ *      业务处理器只根据协议头即可完成路由, 包体在真正需要时才反序列化(用完需要release)
+ */
+public class RpcFrame extends DefaultByteBufHolder {
+
+    private final byte type;
+
+    private final byte serializer;
+
+    private final byte status;
+
+    private final long requestId;
+
+    public RpcFrame(byte type, byte serializer, byte status, long requestId, ByteBuf body) {
+        super(body);
+        this.type = type;
+        this.serializer = serializer;
+        this.status = status;
+        this.requestId = requestId;
+    }
+
+    /**
+     * 反序列化包体
+     * @param cls
+     * @param <T>
+     * @return
+     */
+    public <T> T decodeBody(Class<T> cls) {
+        if(serializer != RpcProtocol.SERIALIZER_PROTOSTUFF) {
+            throw new IllegalStateException("unsupported serializer: " + serializer);
+        }
+        ByteBuf body = content();
+        return Serialization.deserialize(body, body.readableBytes(), cls);
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    public byte getStatus() {
+        return status;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    @Override
+    public RpcFrame retain() {
+        super.retain();
+        return this;
+    }
+}
@@ -0,0 +1,43 @@
+package com.jsonyao.rapid.rpc.codec;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * 基于Netty实现RPC框架: 连接建立时的握手响应 => Server端导出的方法字典
+ *      methodKeys[i]的方法ID为i + 1, 之后的请求只需要携带方法ID, 0代表未知方法(回退到字符串形式)
+ */
+@Data
+public class RpcHandshake implements Serializable {
+
+    private static final long serialVersionUID = 4862106632871652237L;
+
+    private List<String> methodKeys;
+
+    /**
+     * 方法签名: com.jsonyao.rapid.rpc.tests.consumer.HelloService#hello(java.lang.String)
+     * @param className
+     * @param methodName
+     * @param parameterTypes
+     * @return
+     */
+    public static String methodKey(String className, String methodName, Class<?>[] parameterTypes) {
+        StringBuilder key = new StringBuilder(className).append('#').append(methodName).append('(');
+        if(parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if(i > 0) {
+                    key.append(',');
+                }
+                key.append(parameterTypes[i].getName());
+            }
+        }
+        return key.append(')').toString();
+    }
+
+    public static String methodKey(Method method) {
+        return methodKey(method.getDeclaringClass().getName(), method.getName(), method.getParameterTypes());
+    }
+}
@@ -0,0 +1,49 @@
+package com.jsonyao.rapid.rpc.codec;
+
+/**
+ * 基于Netty实现RPC框架: 出站消息 = 协议头 + 待序列化的包体(可以为空, eg: 心跳)
+ */
+public class RpcMessage {
+
+    private final byte type;
+
+    private final byte serializer;
+
+    private final byte status;
+
+    private final long requestId;
+
+    private final Object body;
+
+    public RpcMessage(byte type, long requestId, Object body) {
+        this(type, RpcProtocol.STATUS_OK, requestId, body);
+    }
+
+    public RpcMessage(byte type, byte status, long requestId, Object body) {
+        this.type = type;
+        this.serializer = RpcProtocol.SERIALIZER_PROTOSTUFF;
+        this.status = status;
+        this.requestId = requestId;
+        this.body = body;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    public byte getStatus() {
+        return status;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public Object getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,53 @@
+package com.jsonyao.rapid.rpc.codec;
+
+/**
+ * 基于Netty实现RPC框架: 协议常量
+ *
+ * 	协议头(固定18个字节) + 包体:
+ * 	+--------+---------+------+------------+--------+-----------+------------+
+ * 	| magic  | version | type | serializer | status | requestId | bodyLength |
+ * 	| 2 byte | 1 byte  | 1    | 1 byte     | 1 byte | 8 byte    | 4 byte     |
+ * 	+--------+---------+------+------------+--------+-----------+------------+
+ */
+public final class RpcProtocol {
+
+    private RpcProtocol() {
+    }
+
+    public static final short MAGIC = (short) 0xDABB;
+
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_LENGTH = 18;
+
+    /**
+     * 包体长度字段在协议头中的偏移量, 用于LengthFieldBasedFrameDecoder分帧
+     */
+    public static final int LENGTH_FIELD_OFFSET = 14;
+
+    public static final int LENGTH_FIELD_LENGTH = 4;
+
+    public static final int MAX_FRAME_LENGTH = 65536;
+
+    // 消息类型
+    public static final byte TYPE_REQUEST = 1;
+    public static final byte TYPE_RESPONSE = 2;
+    public static final byte TYPE_HEARTBEAT = 3;
+    public static final byte TYPE_ONEWAY = 4;
+    public static final byte TYPE_HANDSHAKE = 5;
+    // 取消请求: 不带包体, requestId为要取消的请求, status为CANCEL_MAY_INTERRUPT时允许中断执行中的请求
+    public static final byte TYPE_CANCEL = 6;
+
+    // 序列化方式
+    public static final byte SERIALIZER_PROTOSTUFF = 1;
+
+    // 响应状态
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+    // 服务端过载: 请求没有执行, 包体为空, Client端可以立即换一个地址重试
+    public static final byte STATUS_OVERLOADED = 2;
+
+    // 取消帧的状态
+    public static final byte CANCEL_MAY_INTERRUPT = 1;
+
+}
@@ -12,8 +12,14 @@ public class RpcRequest implements Serializable {
 
     private static final long serialVersionUID = -2392660916221950623L;
 
-    // 用于异步请求Future模型
-    private String requestId;
+    // 用于异步请求Future模型: 发送时由RpcClientHandler按连接单调递增分配, 由协议头携带, 不参与包体序列化
+    private transient long requestId;
+
+    // 握手得到的方法ID: 大于0时只需要携带methodId和parameters, 0代表回退到className/methodName/parameterTypes字符串形式
+    private int methodId;
+
+    // 方法签名, 用于在连接的方法字典中查找methodId, 不参与包体序列化
+    private transient String methodKey;
 
     private String className;
 
@@ -22,5 +28,36 @@ public class RpcRequest implements Serializable {
     private Class<?>[] parameterTypes;
 
     private Object[] parameters;
+    // 调用方剩余的时间(毫秒): 发送时由RpcClientHandler按本次请求的超时时间设置, 0代表没有限制, Server端据此丢弃过期的请求
+    private long timeoutMillis;
+
+    /**
+     * 复制请求: 同一个请求发往多个连接时(比如对冲), 每份请求各自由连接分配请求ID
+     * @return
+     */
+    public RpcRequest copy() {
+        RpcRequest request = new RpcRequest();
+        request.setMethodId(this.methodId);
+        request.setMethodKey(this.methodKey);
+        request.setClassName(this.className);
+        request.setMethodName(this.methodName);
+        request.setParameterTypes(this.parameterTypes);
+        request.setParameters(this.parameters);
+        return request;
+    }
+
+    /**
+     * 精简形式的请求: 只携带methodId和parameters
+     * @param methodId
+     * @return
+     */
+    public RpcRequest compact(int methodId) {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(this.requestId);
+        request.setMethodId(methodId);
+        request.setParameters(this.parameters);
+        request.setTimeoutMillis(this.timeoutMillis);
+        return request;
+    }
 
 }
@@ -12,7 +12,8 @@ public class RpcResponse implements Serializable {
 
     private static final long serialVersionUID = 915558663286057210L;
 
-    private String requestId;
+    // 由协议头携带, 不参与包体序列化
+    private transient long requestId;
 
     private Object result;
 
@@ -1,5 +1,8 @@
 package com.jsonyao.rapid.rpc.codec;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import io.protostuff.LinkedBuffer;
 import io.protostuff.ProtostuffIOUtil;
 import io.protostuff.Schema;
@@ -21,6 +24,16 @@ public class Serialization {
 
     private static Objenesis objenesis = new ObjenesisStd(true);
 
+    /**
+     * 	线程私有的LinkedBuffer: 编解码都在EventLoop线程中执行, 复用同一块缓冲区, 避免每次序列化都重新申请Buffer空间
+     */
+    private static final ThreadLocal<LinkedBuffer> THREAD_LOCAL_BUFFER = new ThreadLocal<LinkedBuffer>() {
+        @Override
+        protected LinkedBuffer initialValue() {
+            return LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+        }
+    };
+
     public Serialization() {
     }
 
@@ -66,4 +79,51 @@ public class Serialization {
             throw new IllegalStateException(e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 	序列化：对象->ByteBuf, 写入(池化的)ByteBuf, 不产生中间字节数组
+     * 	    1. protostuff先编码到线程私有的LinkedBuffer, 满了或结束时经ByteBufOutputStream批量拷贝进ByteBuf, 仍有一次内存拷贝
+     * 	    2. 没有自己实现基于ByteBuf的protostuff Output: 它需要重写varint、嵌套消息长度回填等编码细节, 维护成本高于这次拷贝;
+     * 	       LinkedBuffer是复用的, 拷贝也是按块的批量写入, 每次调用不再分配新的缓冲区和字节数组
+     * @return 写入的字节数
+     */
+    public static <T> int serialize(T obj, ByteBuf out) {
+        @SuppressWarnings("unchecked")
+        Class<T> cls = (Class<T>) obj.getClass();
+        LinkedBuffer buffer = THREAD_LOCAL_BUFFER.get();
+        try {
+            Schema<T> schema = getSchema(cls);
+            return ProtostuffIOUtil.writeTo(new ByteBufOutputStream(out), obj, schema, buffer);
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * 	反序列化（ByteBuf->对象）: 从已分帧的ByteBuf中读取length个字节, 不拷贝到中间字节数组
+     */
+    public static <T> T deserialize(ByteBuf in, int length, Class<T> cls) {
+        try {
+            T message = objenesis.newInstance(cls);
+            Schema<T> schema = getSchema(cls);
+            if (in.hasArray()) {
+                // 堆内存: 直接在底层数组上解析, 然后移动读指针
+                ProtostuffIOUtil.mergeFrom(in.array(), in.arrayOffset() + in.readerIndex(), length, message, schema);
+                in.skipBytes(length);
+            } else {
+                // 直接内存: 以流的方式读取, 线程私有的LinkedBuffer作为读缓冲区
+                LinkedBuffer buffer = THREAD_LOCAL_BUFFER.get();
+                try {
+                    ProtostuffIOUtil.mergeFrom(new ByteBufInputStream(in, length), message, schema, buffer);
+                } finally {
+                    buffer.clear();
+                }
+            }
+            return message;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.jsonyao.rapid.rpc.config.consumer;
 
 import com.jsonyao.rapid.rpc.client.RpcClient;
+import com.jsonyao.rapid.rpc.client.RpcClientOptions;
+import com.jsonyao.rapid.rpc.client.cluster.ClusterType;
+import com.jsonyao.rapid.rpc.client.loadbalance.LoadBalanceType;
 import com.jsonyao.rapid.rpc.config.AbstractRpcConfig;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 基于Netty实现RPC框架: 服务消费者配置类
@@ -31,9 +36,27 @@ public class ConsumerConfig<T> extends AbstractRpcConfig {
      */
     private RpcClient client ;
 
+    /**
+     * Client端可选配置: 回调线程池等
+     */
+    private RpcClientOptions options = new RpcClientOptions();
+
+    /**
+     * 方法级配置: 负载均衡策略、一致性哈希的参数下标等
+     */
+    private List<MethodConfig> methods;
+
     @SuppressWarnings("unchecked")
     public void initRpcClient() {
+        if(methods != null) {
+            Map<String, MethodConfig> methodConfigs = new HashMap<>();
+            for (MethodConfig methodConfig : methods) {
+                methodConfigs.put(methodConfig.getName(), methodConfig);
+            }
+            options.setMethods(methodConfigs);
+        }
         this.client = new RpcClient();
+        this.client.setOptions(options);
         this.proxyInstance = (T) this.client.initClient(url, connectTimeout, getProxyClass());
     }
 
@@ -84,4 +107,52 @@ public class ConsumerConfig<T> extends AbstractRpcConfig {
     public void setClient(RpcClient client) {
         this.client = client;
     }
+
+    /**
+     * 接口级负载均衡策略
+     * @param loadBalance
+     */
+    public void setLoadBalance(LoadBalanceType loadBalance) {
+        this.options.setLoadBalance(loadBalance);
+    }
+
+    /**
+     * 接口级一致性哈希的参数下标
+     * @param hashArgument
+     */
+    public void setHashArgument(int hashArgument) {
+        this.options.setHashArgument(hashArgument);
+    }
+
+    /**
+     * 接口级集群容错策略
+     * @param cluster
+     */
+    public void setCluster(ClusterType cluster) {
+        this.options.setCluster(cluster);
+    }
+
+    /**
+     * 接口级失败转移的最大重试次数
+     * @param retries
+     */
+    public void setRetries(int retries) {
+        this.options.setRetries(retries);
+    }
+
+    public List<MethodConfig> getMethods() {
+        return methods;
+    }
+
+    public void setMethods(List<MethodConfig> methods) {
+        this.methods = methods;
+    }
+
+    public RpcClientOptions getOptions() {
+        return options;
+    }
+
+    public void setOptions(RpcClientOptions options) {
+        this.options = options;
+    }
 }
@@ -0,0 +1,89 @@
+package com.jsonyao.rapid.rpc.config.consumer;
+
+import com.jsonyao.rapid.rpc.client.cluster.ClusterType;
+import com.jsonyao.rapid.rpc.client.loadbalance.LoadBalanceType;
+
+/**
+ * 基于Netty实现RPC框架: 服务消费者方法级配置类 => 覆盖接口级(ConsumerConfig)的配置, 同名重载方法共用一份
+ */
+public class MethodConfig {
+
+    protected String name;// 方法名
+
+    protected LoadBalanceType loadBalance;// 负载均衡策略, 为空时沿用接口级配置
+
+    protected int hashArgument = 0;// 一致性哈希时作为哈希键的参数下标
+
+    protected ClusterType cluster;// 集群容错策略, 为空时沿用接口级配置: 失败转移、并行调用、对冲只能用于幂等方法
+
+    protected int retries = -1;// 失败转移时的最大重试次数, 小于0时沿用接口级配置
+
+    protected int forks = -1;// 并行调用的地址数, 小于0时沿用接口级配置
+
+    protected long hedgingDelayMillis = -1;// 发出对冲请求前的等待时间(毫秒), 0代表使用该方法最近的p95延迟, 小于0时沿用接口级配置
+
+    public MethodConfig() {
+
+    }
+
+    public MethodConfig(String name, LoadBalanceType loadBalance) {
+        this.name = name;
+        this.loadBalance = loadBalance;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public LoadBalanceType getLoadBalance() {
+        return loadBalance;
+    }
+
+    public void setLoadBalance(LoadBalanceType loadBalance) {
+        this.loadBalance = loadBalance;
+    }
+
+    public int getHashArgument() {
+        return hashArgument;
+    }
+
+    public void setHashArgument(int hashArgument) {
+        this.hashArgument = hashArgument;
+    }
+
+    public ClusterType getCluster() {
+        return cluster;
+    }
+
+    public void setCluster(ClusterType cluster) {
+        this.cluster = cluster;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public int getForks() {
+        return forks;
+    }
+
+    public void setForks(int forks) {
+        this.forks = forks;
+    }
+
+    public long getHedgingDelayMillis() {
+        return hedgingDelayMillis;
+    }
+
+    public void setHedgingDelayMillis(long hedgingDelayMillis) {
+        this.hedgingDelayMillis = hedgingDelayMillis;
+    }
+}
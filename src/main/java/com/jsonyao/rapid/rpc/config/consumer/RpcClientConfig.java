@@ -25,4 +25,15 @@ public class RpcClientConfig {
     public <T> ConsumerConfig<?> getConsumer(Class<T> clazz, String version) {
         return rpcRegistryConsumerService.getConsumer(clazz.getName(), version);
     }
+
+    /**
+     * reference 声明引用的服务: 按需订阅时在启动阶段提前订阅, 让服务发现和建立连接不占用第一次调用的时间
+     * @param <T>
+     * @param clazz
+     * @param version
+     * @throws Exception
+     */
+    public <T> void reference(Class<T> clazz, String version) throws Exception {
+        rpcRegistryConsumerService.subscribe(clazz.getName(), version);
+    }
 }
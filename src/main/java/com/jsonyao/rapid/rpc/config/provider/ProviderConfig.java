@@ -15,6 +15,8 @@ public class ProviderConfig extends AbstractRpcConfig {
 
     protected int weight = 1;// 权重
 
+    protected boolean interruptOnCancel = false;// Client端取消执行中的请求时是否中断执行线程
+
     public Object getRef() {
         return ref;
     }
@@ -46,4 +48,12 @@ public class ProviderConfig extends AbstractRpcConfig {
     public void setWeight(int weight) {
         this.weight = weight;
     }
+
+    public boolean isInterruptOnCancel() {
+        return interruptOnCancel;
+    }
+
+    public void setInterruptOnCancel(boolean interruptOnCancel) {
+        this.interruptOnCancel = interruptOnCancel;
+    }
 }
@@ -2,6 +2,7 @@ package com.jsonyao.rapid.rpc.config.provider;
 
 import com.jsonyao.rapid.rpc.registry.RpcRegistryProviderService;
 import com.jsonyao.rapid.rpc.server.RpcServer;
+import com.jsonyao.rapid.rpc.server.RpcServerOptions;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
@@ -17,6 +18,7 @@ public class RpcServerConfig {
     protected int port;
     private List<ProviderConfig> providerConfigs;// 元数据信息列表
     private RpcRegistryProviderService rpcRegistryProviderService;// 注册元数据信息服务
+    private RpcServerOptions options = new RpcServerOptions();// Server端可选配置: 线程模型等
 
     public RpcServerConfig(List<ProviderConfig> providerConfigs) {
         this.providerConfigs = providerConfigs;
@@ -32,7 +34,7 @@ public class RpcServerConfig {
     public void exporter() {
         if(rpcServer == null) {
             try {
-                rpcServer = new RpcServer(host + ":" + port);
+                rpcServer = new RpcServer(host + ":" + port, options);
             } catch (InterruptedException e) {
                 log.error("RpcServerConfig exporter exception: " + e);
             }
@@ -69,4 +71,12 @@ public class RpcServerConfig {
     public void setProviderConfigs(List<ProviderConfig> providerConfigs) {
         this.providerConfigs = providerConfigs;
     }
+
+    public RpcServerOptions getOptions() {
+        return options;
+    }
+
+    public void setOptions(RpcServerOptions options) {
+        this.options = options;
+    }
 }
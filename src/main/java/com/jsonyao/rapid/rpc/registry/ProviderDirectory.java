@@ -0,0 +1,86 @@
+package com.jsonyao.rapid.rpc.registry;
+
+import com.jsonyao.rapid.rpc.config.consumer.CachedService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于Netty实现RPC框架: 单个服务(接口:版本号)的服务提供者视图
+ *      1. 按地址建立索引: 增加、删除、权重变化都是O(1)
+ *      2. 每个操作返回是否真的发生了变化, 调用方只需要把变化同步给连接管理器中受影响的地址
+ */
+public class ProviderDirectory {
+
+    /**
+     * address-CachedService
+     */
+    private final Map<String, CachedService> providers = new ConcurrentHashMap<>();
+
+    /**
+     * 增加或者更新服务提供者
+     * @param address
+     * @param weight
+     * @return 新增或者权重发生变化时返回true
+     */
+    public boolean put(String address, int weight) {
+        CachedService previous = providers.put(address, new CachedService(address, weight));
+        return previous == null || previous.getWeight() != weight;
+    }
+
+    /**
+     * 删除服务提供者
+     * @param address
+     * @return 存在并且已删除时返回true
+     */
+    public boolean remove(String address) {
+        return providers.remove(address) != null;
+    }
+
+    public boolean contains(String address) {
+        return providers.containsKey(address);
+    }
+
+    public int size() {
+        return providers.size();
+    }
+
+    /**
+     * 当前所有的服务提供者及其权重: 用于持久化本地快照
+     * @return address-weight
+     */
+    public Map<String, Integer> getWeights() {
+        Map<String, Integer> weights = new HashMap<>();
+        for (CachedService service : providers.values()) {
+            weights.put(service.getAddress(), service.getWeight());
+        }
+        return weights;
+    }
+
+    /**
+     * 当前所有的地址
+     * @return
+     */
+    public Set<String> getAddresses() {
+        return new HashSet<>(providers.keySet());
+    }
+
+    /**
+     * 当前所有的服务提供者: 按权重重复地址, 与连接管理器的地址列表格式一致
+     * @return
+     */
+    public List<String> getUrls() {
+        List<String> urls = new ArrayList<>();
+        for (CachedService service : providers.values()) {
+            for (int i = 0; i < service.getWeight(); i++) {
+                urls.add(service.getAddress());
+            }
+        }
+        return urls;
+    }
+}
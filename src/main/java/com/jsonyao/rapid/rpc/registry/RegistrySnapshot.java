@@ -0,0 +1,138 @@
+package com.jsonyao.rapid.rpc.registry;
+
+import com.alibaba.fastjson.JSONObject;
+import com.jsonyao.rapid.rpc.utils.FastJsonConvertUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于Netty实现RPC框架: 服务提供者视图的本地快照
+ *      1. 启动时先加载快照, 不需要等待注册中心的会话建立就可以开始建立连接
+ *      2. 每次变更后异步写出: 短时间内的多次变更合并为一次写出, 先写临时文件再原子替换, 不会读到写了一半的快照
+ *      3. 格式: {"interfaceClass:version": {"host:port": weight}}
+ *      4. 按需订阅时本次运行还没有引用的服务不在视图中: 写出时原样保留它们在快照中的内容, 直到被订阅
+ */
+@Slf4j
+public class RegistrySnapshot {
+
+    /**
+     * 合并写出的延迟(毫秒)
+     */
+    private static final long WRITE_DELAY_MILLIS = 100;
+
+    private final File file;
+
+    /**
+     * interfaceClass:version-ProviderDirectory: 写出时读取的服务提供者视图
+     */
+    private final Map<String, ProviderDirectory> directories;
+
+    /**
+     * 从快照加载、但还没有出现在视图中的服务: interfaceClass:version-(address-weight)
+     */
+    private final Map<String, Map<String, Integer>> unsubscribed = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("rapid-rpc-registry-snapshot", true));
+
+    /**
+     * 是否已经安排了写出: 写出之前的变更都会包含在这次写出中
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public RegistrySnapshot(File file, Map<String, ProviderDirectory> directories) {
+        this.file = file;
+        this.directories = directories;
+    }
+
+    /**
+     * 加载快照
+     * @return interfaceClass:version-(address-weight), 快照不存在或者损坏时为空
+     */
+    public Map<String, Map<String, Integer>> load() {
+        Map<String, Map<String, Integer>> services = new HashMap<>();
+        if(!file.isFile()) {
+            return services;
+        }
+        try {
+            String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            JSONObject json = FastJsonConvertUtil.convertJSONToObject(text, JSONObject.class);
+            if(json == null) {
+                return services;
+            }
+            for (String interfaceNameWithV : json.keySet()) {
+                JSONObject providers = json.getJSONObject(interfaceNameWithV);
+                Map<String, Integer> weights = new HashMap<>();
+                for (String address : providers.keySet()) {
+                    weights.put(address, providers.getIntValue(address));
+                }
+                services.put(interfaceNameWithV, weights);
+            }
+            unsubscribed.putAll(services);
+            log.info(" load registry snapshot " + file + ", services: " + services.size());
+        } catch (Exception e) {
+            log.warn(" load registry snapshot failed: " + file, e);
+        }
+        return services;
+    }
+
+    /**
+     * 服务提供者视图发生变化: 异步写出
+     */
+    public void changed() {
+        if(scheduled.compareAndSet(false, true)) {
+            writer.schedule(new Runnable() {
+                public void run() {
+                    // 先清除标记再读取视图: 读取之后的变更会再安排一次写出
+                    scheduled.set(false);
+                    write();
+                }
+            }, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void write() {
+        Map<String, Map<String, Integer>> services = new HashMap<>();
+        for (Map.Entry<String, ProviderDirectory> entry : directories.entrySet()) {
+            // 已经出现在视图中的服务以视图为准, 不再保留快照中的内容
+            unsubscribed.remove(entry.getKey());
+            Map<String, Integer> weights = entry.getValue().getWeights();
+            if(!weights.isEmpty()) {
+                services.put(entry.getKey(), weights);
+            }
+        }
+        for (Map.Entry<String, Map<String, Integer>> entry : unsubscribed.entrySet()) {
+            if(!services.containsKey(entry.getKey())) {
+                services.put(entry.getKey(), entry.getValue());
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if(dir != null && !dir.isDirectory()) {
+                Files.createDirectories(dir.toPath());
+            }
+            Files.write(tmp.toPath(), FastJsonConvertUtil.convertObjectToJSON(services).getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.warn(" write registry snapshot failed: " + file, e);
+        }
+    }
+}
@@ -1,43 +1,138 @@
 package com.jsonyao.rapid.rpc.registry;
 
-import com.jsonyao.rapid.rpc.client.RpcClient;
-import com.jsonyao.rapid.rpc.config.consumer.CachedService;
 import com.jsonyao.rapid.rpc.config.consumer.ConsumerConfig;
 import com.jsonyao.rapid.rpc.utils.FastJsonConvertUtil;
 import com.jsonyao.rapid.rpc.zookeeper.ChangedEvent;
 import com.jsonyao.rapid.rpc.zookeeper.NodeListener;
 import com.jsonyao.rapid.rpc.zookeeper.ZookeeperClient;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.zookeeper.KeeperException;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * 基于Netty实现RPC框架: 客户端注册服务 & 服务结点监听
  * => 服务发现的核心类 监听zookeeper的数据节点发生变更，即时的进行感知
+ *      1. 全量订阅(默认): 监听根结点下的所有服务, 为每个服务建立连接、生成代理对象
+ *      2. 树订阅: 同样是全量订阅, 但整棵注册树只用一个树缓存监听
+ *      3. 按需订阅: 只有getConsumer或者声明引用的服务才监听其providers结点, 按需发现和建立连接
+ *      配置本地快照时, 服务提供者视图每次变化都会写出快照, 启动时先按快照建立连接, 再与注册中心对账
  */
+@Slf4j
 public class RpcRegistryConsumerService extends AbstractRpcRegistry implements NodeListener {
 
     private ZookeeperClient zookeeperClient;
 
-    private final ReentrantLock LOCK = new ReentrantLock();
-
     /**
-     * interfaceClass:version-List<CachedService>
+     * interfaceClass:version-ProviderDirectory: 按地址索引的服务提供者视图
      */
-    private ConcurrentHashMap<String, List<CachedService>> CACHED_SERVICES = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, ProviderDirectory> CACHED_SERVICES = new ConcurrentHashMap<>();
 
     /**
      * interfaceClass:version-ConsumerConfig<?>
      */
     private ConcurrentHashMap<String, ConsumerConfig<?>> CACHED_CONSUMER_CONFIGS = new ConcurrentHashMap<>();
 
+    /**
+     * 订阅注册中心的方式
+     */
+    private final SubscribeMode subscribeMode;
+
+    /**
+     * 按需订阅时已经订阅的服务: interfaceClass:version
+     */
+    private final ConcurrentHashMap<String, Boolean> SUBSCRIBED_SERVICES = new ConcurrentHashMap<>();
+
+    /**
+     * 服务提供者视图的本地快照: 没有配置快照文件时为空
+     */
+    private RegistrySnapshot snapshot;
+
+    /**
+     * 启动时从快照加载的服务提供者: interfaceClass:version-(address-weight)
+     */
+    private Map<String, Map<String, Integer>> snapshotServices = Collections.emptyMap();
+
+    /**
+     * 后台初始化注册中心: 会话建立之前的操作会一直重试, 不能阻塞启动线程
+     */
+    private static final ExecutorService BOOTSTRAP_EXECUTOR = Executors.newSingleThreadExecutor(new DefaultThreadFactory("rapid-rpc-registry-bootstrap", true));
+
     public RpcRegistryConsumerService(ZookeeperClient zookeeperClient) throws Exception {
+        this(zookeeperClient, SubscribeMode.EAGER);
+    }
+
+    /**
+     * @param zookeeperClient
+     * @param lazySubscribe true: 不监听根结点, 只订阅应用实际引用的服务
+     * @throws Exception
+     */
+    public RpcRegistryConsumerService(ZookeeperClient zookeeperClient, boolean lazySubscribe) throws Exception {
+        this(zookeeperClient, lazySubscribe ? SubscribeMode.LAZY : SubscribeMode.EAGER);
+    }
+
+    public RpcRegistryConsumerService(ZookeeperClient zookeeperClient, SubscribeMode subscribeMode) throws Exception {
+        this(zookeeperClient, subscribeMode, null);
+    }
+
+    /**
+     * @param zookeeperClient
+     * @param subscribeMode
+     * @param snapshotFile 服务提供者视图的本地快照: 不为空时先按快照建立连接, 注册中心的初始化在后台进行, 之后与注册中心的数据对账
+     * @throws Exception
+     */
+    public RpcRegistryConsumerService(ZookeeperClient zookeeperClient, SubscribeMode subscribeMode, File snapshotFile) throws Exception {
         this.zookeeperClient = zookeeperClient;
+        this.subscribeMode = subscribeMode;
+
+        if(snapshotFile == null) {
+            // 没有快照: 同步初始化, 构造完成时已经开始监听
+            bootstrap();
+            return;
+        }
 
+        // 1. 先加载快照: 按需订阅时等到订阅再使用, 否则立即为快照中的服务建立连接
+        this.snapshot = new RegistrySnapshot(snapshotFile, CACHED_SERVICES);
+        this.snapshotServices = snapshot.load();
+        if(subscribeMode != SubscribeMode.LAZY) {
+            for (Map.Entry<String, Map<String, Integer>> entry : snapshotServices.entrySet()) {
+                seed(entry.getKey(), entry.getValue());
+            }
+        }
+
+        // 2. 注册中心的初始化在后台进行: 会话建立之前不阻塞启动
+        BOOTSTRAP_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                try {
+                    bootstrap();
+                    // 3. 监听建立之后, 与注册中心的数据对账: 移除快照中已经下线的服务提供者
+                    if(RpcRegistryConsumerService.this.subscribeMode != SubscribeMode.LAZY) {
+                        for (String interfaceNameWithV : snapshotServices.keySet()) {
+                            reconcile(interfaceNameWithV);
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error(" registry bootstrap failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 初始化根节点, 按订阅方式建立监听
+     * @throws Exception
+     */
+    private void bootstrap() throws Exception {
         //	初始化根节点
         if(!zookeeperClient.checkExists(ROOT_PATH)) {
             zookeeperClient.addPersistentNode(ROOT_PATH, ROOT_VALUE);
@@ -54,17 +149,122 @@ public class RpcRegistryConsumerService extends AbstractRpcRegistry implements N
          * 				/192.168.11.103
          *
          */
-        this.zookeeperClient.listener4ChildrenPath(ROOT_PATH, this);
+        if(subscribeMode == SubscribeMode.EAGER) {
+            this.zookeeperClient.listener4ChildrenPath(ROOT_PATH, this);
+        } else if(subscribeMode == SubscribeMode.TREE) {
+            // 监听到服务提供者结点为止: 根结点[0] / 服务[1] / providers[2] / 地址[3]
+            this.zookeeperClient.listener4TreePath(ROOT_PATH, 3, this);
+        }
     }
 
     /**
      * 从缓存中获取ConsumerConfig: urls, proxyInstance, client
+     *      按需订阅时, 第一次获取会先订阅该服务
      * @param interfaceName
      * @param interfaceVersion
-     * @return
+     * @return 还没有服务提供者时返回null
      */
     public ConsumerConfig<?> getConsumer(String interfaceName, String interfaceVersion) {
-        return CACHED_CONSUMER_CONFIGS.get(interfaceName + ":" + interfaceVersion);
+        String interfaceNameWithV = interfaceName + ":" + interfaceVersion;
+        if(subscribeMode == SubscribeMode.LAZY && !SUBSCRIBED_SERVICES.containsKey(interfaceNameWithV)) {
+            try {
+                subscribe(interfaceName, interfaceVersion);
+            } catch (Exception e) {
+                throw new IllegalStateException("subscribe service failed: " + interfaceNameWithV, e);
+            }
+        }
+        return CACHED_CONSUMER_CONFIGS.get(interfaceNameWithV);
+    }
+
+    /**
+     * 按需订阅一个服务: 只监听该服务的providers结点, 并同步拉取一次当前的服务提供者
+     *      快照中有该服务时先按快照建立连接, 监听和拉取在后台进行
+     *      全量订阅时根结点的监听已经覆盖所有服务, 不需要调用
+     * @param interfaceName
+     * @param interfaceVersion
+     * @throws Exception
+     */
+    public void subscribe(String interfaceName, String interfaceVersion) throws Exception {
+        final String interfaceNameWithV = interfaceName + ":" + interfaceVersion;
+        if(subscribeMode != SubscribeMode.LAZY || SUBSCRIBED_SERVICES.putIfAbsent(interfaceNameWithV, Boolean.TRUE) != null) {
+            return;
+        }
+        Map<String, Integer> snapshotProviders = snapshotServices.get(interfaceNameWithV);
+        if(snapshotProviders == null || snapshotProviders.isEmpty()) {
+            try {
+                subscribeProviders(interfaceNameWithV);
+            } catch (Exception e) {
+                // 订阅失败: 允许下次重新订阅
+                SUBSCRIBED_SERVICES.remove(interfaceNameWithV);
+                throw e;
+            }
+            return;
+        }
+        seed(interfaceNameWithV, snapshotProviders);
+        BOOTSTRAP_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                try {
+                    subscribeProviders(interfaceNameWithV);
+                } catch (Exception e) {
+                    log.error(" subscribe service failed: " + interfaceNameWithV, e);
+                }
+            }
+        });
+    }
+
+    private void subscribeProviders(String interfaceNameWithV) throws Exception {
+        //	/rapid-rpc/com.bfxy.rapid.rpc.invoke.consumer.test.HelloService:1.0.0/providers
+        String providersPath = ROOT_PATH + "/" + interfaceNameWithV + PROVIDERS_PATH;
+        // 1. 先监听, 再拉取: 拉取期间的变更也会通过监听同步, 重复的事件由ProviderDirectory去重
+        this.zookeeperClient.listener4ChildrenPath(providersPath, this);
+
+        // 2. 同步拉取一次当前的服务提供者: 第一次getConsumer就能拿到可用的代理对象
+        reconcile(interfaceNameWithV);
+    }
+
+    /**
+     * 与注册中心对账: 拉取当前的服务提供者, 同步新增和权重变化, 移除已经不存在的地址
+     * @param interfaceNameWithV
+     * @throws Exception
+     */
+    private void reconcile(String interfaceNameWithV) throws Exception {
+        String providersPath = ROOT_PATH + "/" + interfaceNameWithV + PROVIDERS_PATH;
+        List<String> addresses = this.zookeeperClient.getNodes(providersPath);
+        Set<String> live = new HashSet<>();
+        if(addresses != null) {
+            for (String address : addresses) {
+                String data;
+                try {
+                    data = this.zookeeperClient.getData(providersPath + "/" + address);
+                } catch (KeeperException.NoNodeException e) {
+                    // 拉取期间已经下线
+                    continue;
+                }
+                live.add(address);
+                providerChanged(interfaceNameWithV, address, weight(data));
+            }
+        }
+        for (String address : directory(interfaceNameWithV).getAddresses()) {
+            if(!live.contains(address)) {
+                log.info(" reconcile remove stale provider " + interfaceNameWithV + " " + address);
+                providerRemoved(interfaceNameWithV, address);
+            }
+        }
+    }
+
+    /**
+     * 按快照中的服务提供者建立连接
+     * @param interfaceNameWithV
+     * @param providers address-weight
+     */
+    private void seed(String interfaceNameWithV, Map<String, Integer> providers) {
+        for (Map.Entry<String, Integer> provider : providers.entrySet()) {
+            try {
+                providerChanged(interfaceNameWithV, provider.getKey(), provider.getValue());
+            } catch (Exception e) {
+                log.warn(" seed provider from snapshot failed: " + interfaceNameWithV + " " + provider.getKey(), e);
+            }
+        }
     }
 
     /**
@@ -82,82 +282,123 @@ public class RpcRegistryConsumerService extends AbstractRpcRegistry implements N
         // 监听类型
         ChangedEvent.Type type = event.getType();
 
-        // 这里只监控添加的操作
-        if(ChangedEvent.Type.CHILD_ADDED == type) {
-            String[] pathArray = null;
-            if(!StringUtils.isBlank(path) && (pathArray = path.substring(1).split("/")).length == 2) {
-                //	对根节点下的直接子节点进行继续监听，就是我们的服务权限命名+版本号的路径监听
-                //	/rapid-rpc/com.bfxy.rapid.rpc.invoke.consumer.test.HelloService:1.0.0
-                this.zookeeperClient.listener4ChildrenPath(path, this);
-            }
+        if(StringUtils.isBlank(path)) {
+            return;
+        }
+        String[] pathArray = path.substring(1).split("/");
+
+        // 服务和providers结点只需要在添加时继续监听: 树订阅时已经监听了整棵树
+        if(ChangedEvent.Type.CHILD_ADDED == type && subscribeMode == SubscribeMode.EAGER) {
+            //	对根节点下的直接子节点进行继续监听，就是我们的服务权限命名+版本号的路径监听
+            //	/rapid-rpc/com.bfxy.rapid.rpc.invoke.consumer.test.HelloService:1.0.0
             //	继续监听: /rapid-rpc/com.bfxy.rapid.rpc.invoke.consumer.test.HelloService:1.0.0/providers
-            if(!StringUtils.isBlank(path) && (pathArray = path.substring(1).split("/")).length == 3) {
+            if(pathArray.length == 2 || pathArray.length == 3) {
                 this.zookeeperClient.listener4ChildrenPath(path, this);
+                return;
             }
-            //	表示服务地址发生了变更, 需要做具体处理: /rapid-rpc/com.bfxy.rapid.rpc.invoke.consumer.test.HelloService:1.0.0/providers/192.168.11.112
-            if(!StringUtils.isBlank(path) && (pathArray = path.substring(1).split("/")).length == 4) {
-                // 由于设计两个ConcurrentHashMap的原子操作, 所以要加锁
-                LOCK.lock();
+        }
 
-                try {
-                    /**
-                     * pathArray ===>
-                     *
-                     * rapid-rpc [0]
-                     * com.bfxy.rapid.rpc.invoke.consumer.test.HelloService:1.0.0  [1]
-                     * providers [2]
-                     * 192.168.11.112:8080 [3]
-                     */
-                    String interfaceNameWithV = pathArray[1];
-                    String[] arrays = interfaceNameWithV.split(":");
-                    String interfaceName = arrays[0];
-                    String address = pathArray[3];
-                    Map<String, String> instanceMap = FastJsonConvertUtil.convertJSONToObject(data, Map.class);
-                    int addressWeight = Integer.parseInt(instanceMap.get("weight"));
-                    CachedService cachedService = new CachedService(address, addressWeight);
-
-                    // 设置缓存
-                    List<CachedService> addresses = CACHED_SERVICES.get(interfaceNameWithV);
-                    if(addresses == null) {
-                        CopyOnWriteArrayList<CachedService> newAddresses = new CopyOnWriteArrayList<>();
-                        newAddresses.add(cachedService);
-                        CACHED_SERVICES.put(interfaceNameWithV, newAddresses);
-
-                        // 初始化ConsumerConfig, 建立Client连接, 生成代理对象
-                        ConsumerConfig<?> consumerConfig = new ConsumerConfig<>();
-                        consumerConfig.setInterfaceName(interfaceName);
-                        CopyOnWriteArrayList<String> urls = new CopyOnWriteArrayList<>();
-                        // 根据权重对address进行加权 => 这里粗略地设置为权重个address
-                        for (int i = 0; i < addressWeight; i++) {
-                            urls.add(address);
-                        }
-                        consumerConfig.setUrl(urls);
-                        consumerConfig.initRpcClient();
-                        CACHED_CONSUMER_CONFIGS.put(interfaceNameWithV, consumerConfig);
-                    }
-                    // 更新缓存: 由于监听到的事件是增加, 监听的path是服务地址, 所以说明有新的服务地址被添加了, 因此需要更新缓存中的服务列表信息
-                    else {
-                        addresses.add(cachedService);
-                        ConsumerConfig<?> consumerConfig = CACHED_CONSUMER_CONFIGS.get(interfaceNameWithV);
-                        RpcClient rpcClient = consumerConfig.getClient();
-                        CopyOnWriteArrayList<String> urls = new CopyOnWriteArrayList<>();
-                        for (CachedService service : addresses) {
-                            // 根据权重对address进行加权 => 这里粗略地设置为权重个address
-                            for (int i = 0; i < service.getWeight(); i++) {
-                                urls.add(service.getAddress());
-                            }
-                        }
+        //	表示服务地址发生了变更, 需要做具体处理: /rapid-rpc/com.bfxy.rapid.rpc.invoke.consumer.test.HelloService:1.0.0/providers/192.168.11.112
+        if(pathArray.length == 4 && PROVIDERS_PATH.equals("/" + pathArray[2])) {
+            /**
+             * pathArray ===>
+             *
+             * rapid-rpc [0]
+             * com.bfxy.rapid.rpc.invoke.consumer.test.HelloService:1.0.0  [1]
+             * providers [2]
+             * 192.168.11.112:8080 [3]
+             */
+            String interfaceNameWithV = pathArray[1];
+            String address = pathArray[3];
+            if(ChangedEvent.Type.CHILD_REMOVED == type) {
+                providerRemoved(interfaceNameWithV, address);
+            } else {
+                providerChanged(interfaceNameWithV, address, weight(data));
+            }
+        }
+    }
 
-                        // 更新consumerConfig的服务列表: 这里是重新构造新的服务列表方式更新
-                        consumerConfig.setUrl(urls);
+    /**
+     * 服务提供者增加或者权重变化: 只同步这一个地址
+     * @param interfaceNameWithV
+     * @param address
+     * @param weight
+     */
+    private void providerChanged(String interfaceNameWithV, String address, int weight) {
+        ProviderDirectory directory = directory(interfaceNameWithV);
+        // 同一个服务的变更串行处理, 不同服务之间互不影响
+        synchronized (directory) {
+            if(!directory.put(address, weight)) {
+                return;
+            }
+            snapshotChanged();
+            ConsumerConfig<?> consumerConfig = CACHED_CONSUMER_CONFIGS.get(interfaceNameWithV);
+            if(consumerConfig == null) {
+                // 初始化ConsumerConfig, 建立Client连接, 生成代理对象
+                consumerConfig = new ConsumerConfig<>();
+                consumerConfig.setInterfaceName(interfaceNameWithV.split(":")[0]);
+                // 根据权重对address进行加权 => 设置为权重个address, 连接管理器按地址出现的次数作为权重
+                consumerConfig.setUrl(directory.getUrls());
+                consumerConfig.initRpcClient();
+                CACHED_CONSUMER_CONFIGS.put(interfaceNameWithV, consumerConfig);
+            } else {
+                // 增量更新: 新地址建立连接, 已有地址只更新权重
+                consumerConfig.getClient().addServer(address, weight);
+            }
+        }
+    }
 
-                        // 更新缓存信息, 如果存在还没有连接的服务地址, 则异步发起连接
-                        rpcClient.updateConnectedServer(urls);
-                    }
-                } finally {
-                    LOCK.unlock();
-                }
+    /**
+     * 服务提供者下线: 只关闭这一个地址上的连接
+     * @param interfaceNameWithV
+     * @param address
+     */
+    private void providerRemoved(String interfaceNameWithV, String address) {
+        ProviderDirectory directory = directory(interfaceNameWithV);
+        synchronized (directory) {
+            if(!directory.remove(address)) {
+                return;
+            }
+            snapshotChanged();
+            ConsumerConfig<?> consumerConfig = CACHED_CONSUMER_CONFIGS.get(interfaceNameWithV);
+            if(consumerConfig != null) {
+                consumerConfig.getClient().removeServer(address);
             }
         }
     }
+
+    private void snapshotChanged() {
+        if(snapshot != null) {
+            snapshot.changed();
+        }
+    }
+
+    private ProviderDirectory directory(String interfaceNameWithV) {
+        ProviderDirectory directory = CACHED_SERVICES.get(interfaceNameWithV);
+        if(directory == null) {
+            ProviderDirectory newDirectory = new ProviderDirectory();
+            directory = CACHED_SERVICES.putIfAbsent(interfaceNameWithV, newDirectory);
+            if(directory == null) {
+                directory = newDirectory;
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * 解析服务提供者结点数据中的权重: 没有配置时为1
+     * @param data
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private int weight(String data) {
+        if(StringUtils.isBlank(data)) {
+            return 1;
+        }
+        Map<String, String> instanceMap = FastJsonConvertUtil.convertJSONToObject(data, Map.class);
+        if(instanceMap == null || instanceMap.get("weight") == null) {
+            return 1;
+        }
+        return Integer.parseInt(String.valueOf(instanceMap.get("weight")));
+    }
 }
@@ -0,0 +1,23 @@
+package com.jsonyao.rapid.rpc.registry;
+
+/**
+ * 基于Netty实现RPC框架: Client端订阅注册中心的方式
+ */
+public enum SubscribeMode {
+
+    /**
+     * 全量订阅: 监听根结点, 并为每个服务结点和providers结点各建立一个子结点缓存
+     */
+    EAGER,
+
+    /**
+     * 全量订阅: 整棵注册树只用一个树缓存监听, 适合服务数目很多的注册中心
+     */
+    TREE,
+
+    /**
+     * 按需订阅: 只监听getConsumer或者声明引用的服务的providers结点
+     */
+    LAZY
+
+}
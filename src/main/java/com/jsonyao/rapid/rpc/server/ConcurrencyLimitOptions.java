@@ -0,0 +1,43 @@
+package com.jsonyao.rapid.rpc.server;
+
+import lombok.Data;
+
+/**
+ * 基于Netty实现RPC框架: Server端自适应并发限制配置
+ */
+@Data
+public class ConcurrencyLimitOptions {
+
+    /**
+     * 是否启用: 关闭时只有线程模型的排队上限
+     */
+    private boolean enabled = false;
+
+    /**
+     * 初始、最小、最大并发数(排队 + 执行中)
+     */
+    private int initialLimit = 100;
+    private int minLimit = 10;
+    private int maxLimit = 2000;
+
+    /**
+     * 采样窗口(毫秒): 每个窗口按平均延迟调整一次并发数
+     */
+    private long sampleWindowMillis = 100;
+
+    /**
+     * 长期延迟基线的平滑窗口数: 基线反映最近约longWindow个采样窗口的延迟
+     */
+    private int longWindow = 60;
+
+    /**
+     * 延迟容忍度: 平均延迟不超过基线的该倍数时不减小并发数
+     */
+    private double rttTolerance = 1.5;
+
+    /**
+     * 每次调整时新旧并发数的平滑系数
+     */
+    private double smoothing = 0.2;
+
+}
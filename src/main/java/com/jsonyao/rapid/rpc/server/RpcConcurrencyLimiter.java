@@ -0,0 +1,152 @@
+package com.jsonyao.rapid.rpc.server;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于Netty实现RPC框架: 基于延迟梯度的自适应并发限制, 放在服务调用之前
+ *      1. 并发数(排队 + 执行中)达到上限时直接拒绝, 由IO线程立即返回"服务端过载", 不进入线程模型排队
+ *      2. 延迟从收到请求开始计算, 包含排队时间: 排队变长时平均延迟相对长期基线升高, 梯度 = 容忍度 * 基线 / 平均延迟
+ *      3. 每个采样窗口调整一次: 新上限 = 上限 * 梯度(0.5~1) + sqrt(上限), 再与旧上限平滑
+ *         延迟正常时每个窗口增加sqrt(上限)探测更高的并发, 开始排队时按比例收缩
+ *      4. 实际并发不到上限一半时不再增加上限, 避免空闲时上限无限增长
+ *      申请和释放只有CAS和LongAdder, 窗口到期时由一个线程抢到更新权, 不加锁
+ */
+@Slf4j
+public class RpcConcurrencyLimiter {
+
+    private final ConcurrencyLimitOptions options;
+
+    private final long windowNanos;
+
+    /**
+     * 当前并发上限: 只由抢到更新权的线程写入
+     */
+    private volatile double limit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 本窗口内的最大并发数: 近似值, 用于判断是否需要增加上限
+     */
+    private volatile int maxInFlight;
+
+    /**
+     * 本窗口内的延迟样本
+     */
+    private final LongAdder rttSum = new LongAdder();
+    private final LongAdder rttCount = new LongAdder();
+
+    private volatile long windowStart = System.nanoTime();
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    /**
+     * 长期延迟基线(纳秒): 只由抢到更新权的线程读写
+     */
+    private double longRtt;
+
+    private final LongAdder rejected = new LongAdder();
+
+    public RpcConcurrencyLimiter(ConcurrencyLimitOptions options) {
+        this.options = options;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(options.getSampleWindowMillis());
+        this.limit = options.getInitialLimit();
+    }
+
+    /**
+     * 申请一个并发名额
+     * @return 达到上限时返回false
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if(current >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+            if(inFlight.compareAndSet(current, current + 1)) {
+                if(current + 1 > maxInFlight) {
+                    maxInFlight = current + 1;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放并发名额, 并记录延迟样本
+     * @param rttNanos 从收到请求到处理完成的时间, 小于0代表没有样本(比如没有真正执行)
+     */
+    public void release(long rttNanos) {
+        inFlight.decrementAndGet();
+        if(rttNanos >= 0) {
+            rttSum.add(rttNanos);
+            rttCount.increment();
+        }
+        long now = System.nanoTime();
+        if(now - windowStart >= windowNanos && updating.compareAndSet(false, true)) {
+            try {
+                if(now - windowStart >= windowNanos) {
+                    windowStart = now;
+                    long count = rttCount.sumThenReset();
+                    long sum = rttSum.sumThenReset();
+                    int peak = maxInFlight;
+                    maxInFlight = inFlight.get();
+                    if(count > 0) {
+                        update((double) sum / count, peak);
+                    }
+                }
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    private void update(double shortRtt, int peak) {
+        if(longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            double alpha = 2.0 / (options.getLongWindow() + 1);
+            longRtt = longRtt * (1 - alpha) + shortRtt * alpha;
+        }
+        // 基线远高于当前延迟(比如过载恢复后): 加快基线回落, 否则很长时间内都不会收缩
+        if(longRtt > shortRtt * 2) {
+            longRtt *= 0.95;
+        }
+
+        double current = limit;
+        double gradient = Math.max(0.5, Math.min(1.0, options.getRttTolerance() * longRtt / shortRtt));
+        double newLimit = current * gradient + Math.sqrt(current);
+        // 实际并发不到上限一半: 上限不是瓶颈, 不再增加
+        if(peak < current / 2) {
+            newLimit = Math.min(newLimit, current);
+        }
+        newLimit = current * (1 - options.getSmoothing()) + newLimit * options.getSmoothing();
+        newLimit = Math.max(options.getMinLimit(), Math.min(options.getMaxLimit(), newLimit));
+        if((int) newLimit != (int) current) {
+            log.debug("concurrency limit " + (int) current + " -> " + (int) newLimit + ", rtt: " + (long) (shortRtt / 1000) + "us, longRtt: " + (long) (longRtt / 1000) + "us");
+        }
+        this.limit = newLimit;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RpcConcurrencyLimiter{limit=" + getLimit() + ", inFlight=" + getInFlight() + ", rejected=" + getRejected() + "}";
+    }
+}
@@ -0,0 +1,120 @@
+package com.jsonyao.rapid.rpc.server;
+
+import com.jsonyao.rapid.rpc.codec.RpcHandshake;
+import com.jsonyao.rapid.rpc.config.provider.ProviderConfig;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.cglib.reflect.FastClass;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于Netty实现RPC框架: 不可变的服务分发表 => (接口, 方法签名)-预先解析好的RpcInvoker
+ *      1. registerProcessor时一次性完成FastClass的创建和方法解析, 请求路径上只需要一次查表 + 直接调用
+ *      2. 注册新服务时生成新的分发表, 通过volatile/原子引用发布, 已发布的分发表不再修改, 可以安全地被多个线程读取
+ *      3. methodId = 下标 + 1, 只追加不删除, 保证已经握手的连接所拿到的方法ID始终有效
+ */
+@Slf4j
+public class RpcDispatchTable {
+
+    public static final RpcDispatchTable EMPTY = new RpcDispatchTable(new RpcInvoker[0], Collections.<String, RpcInvoker>emptyMap());
+
+    /**
+     * methodId - 1 => RpcInvoker
+     */
+    private final RpcInvoker[] invokers;
+
+    /**
+     * methodKey-RpcInvoker
+     */
+    private final Map<String, RpcInvoker> invokerMap;
+
+    /**
+     * 握手响应: 预先生成, 连接建立时直接下发
+     */
+    private final RpcHandshake handshake;
+
+    private RpcDispatchTable(RpcInvoker[] invokers, Map<String, RpcInvoker> invokerMap) {
+        this.invokers = invokers;
+        this.invokerMap = invokerMap;
+        List<String> methodKeys = new ArrayList<>(invokers.length);
+        for (RpcInvoker invoker : invokers) {
+            methodKeys.add(invoker.getMethodKey());
+        }
+        this.handshake = new RpcHandshake();
+        this.handshake.setMethodKeys(Collections.unmodifiableList(methodKeys));
+    }
+
+    /**
+     * 注册服务提供者: 返回包含新服务的分发表, 当前分发表保持不变
+     * @param providerConfig
+     * @return
+     */
+    public RpcDispatchTable register(ProviderConfig providerConfig) {
+        String interfaceName = providerConfig.getInterfaceName();
+        Object serviceRef = providerConfig.getRef();
+        Class<?> serviceRefClass = serviceRef.getClass();
+
+        // 加载不到接口时, 退化为导出实现类的所有public方法
+        Class<?> interfaceClass;
+        try {
+            interfaceClass = Class.forName(interfaceName, false, serviceRefClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            log.warn("dispatch table can not load interface: " + interfaceName + ", export methods of " + serviceRefClass.getName());
+            interfaceClass = serviceRefClass;
+        }
+
+        // 每个实现类只创建一次FastClass
+        FastClass serviceFastClass = FastClass.create(serviceRefClass);
+        List<RpcInvoker> newInvokers = new ArrayList<>(Arrays.asList(this.invokers));
+        Map<String, RpcInvoker> newInvokerMap = new HashMap<>(this.invokerMap);
+        for (Method method : interfaceClass.getMethods()) {
+            if(method.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            String methodKey = RpcHandshake.methodKey(interfaceName, method.getName(), method.getParameterTypes());
+            RpcInvoker existed = newInvokerMap.get(methodKey);
+            // 重复注册时沿用原来的methodId, 只替换服务实例
+            int methodId = existed == null ? newInvokers.size() + 1 : existed.getMethodId();
+            RpcInvoker invoker = new RpcInvoker(methodId, methodKey, serviceRef,
+                    serviceFastClass.getMethod(method.getName(), method.getParameterTypes()), providerConfig.isInterruptOnCancel());
+            if(existed == null) {
+                newInvokers.add(invoker);
+            } else {
+                newInvokers.set(methodId - 1, invoker);
+            }
+            newInvokerMap.put(methodKey, invoker);
+        }
+        return new RpcDispatchTable(newInvokers.toArray(new RpcInvoker[0]), newInvokerMap);
+    }
+
+    /**
+     * 根据方法ID查找调用器
+     * @param methodId
+     * @return
+     */
+    public RpcInvoker get(int methodId) {
+        if(methodId <= 0 || methodId > invokers.length) {
+            return null;
+        }
+        return invokers[methodId - 1];
+    }
+
+    /**
+     * 根据方法签名查找调用器: 回退的字符串形式
+     * @param methodKey
+     * @return
+     */
+    public RpcInvoker get(String methodKey) {
+        return invokerMap.get(methodKey);
+    }
+
+    public RpcHandshake handshake() {
+        return handshake;
+    }
+}
@@ -0,0 +1,58 @@
+package com.jsonyao.rapid.rpc.server;
+
+import net.sf.cglib.reflect.FastMethod;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * 基于Netty实现RPC框架: 预先解析好的服务方法调用器 => 服务实例 + CGLIB FastMethod, 请求路径上直接调用
+ */
+public class RpcInvoker {
+
+    private final int methodId;
+
+    private final String methodKey;
+
+    private final Object serviceRef;
+
+    private final FastMethod fastMethod;
+
+    /**
+     * Client端取消执行中的请求时是否中断执行线程: 服务方法需要能正确处理中断
+     */
+    private final boolean interruptOnCancel;
+
+    public RpcInvoker(int methodId, String methodKey, Object serviceRef, FastMethod fastMethod, boolean interruptOnCancel) {
+        this.methodId = methodId;
+        this.methodKey = methodKey;
+        this.serviceRef = serviceRef;
+        this.fastMethod = fastMethod;
+        this.interruptOnCancel = interruptOnCancel;
+    }
+
+    /**
+     * 调用具体的本地服务方法
+     * @param parameters
+     * @return
+     * @throws InvocationTargetException
+     */
+    public Object invoke(Object[] parameters) throws InvocationTargetException {
+        return fastMethod.invoke(serviceRef, parameters);
+    }
+
+    public int getMethodId() {
+        return methodId;
+    }
+
+    public String getMethodKey() {
+        return methodKey;
+    }
+
+    public Object getServiceRef() {
+        return serviceRef;
+    }
+
+    public boolean isInterruptOnCancel() {
+        return interruptOnCancel;
+    }
+}
@@ -2,20 +2,23 @@ package com.jsonyao.rapid.rpc.server;
 
 import com.jsonyao.rapid.rpc.codec.RpcDecoder;
 import com.jsonyao.rapid.rpc.codec.RpcEncoder;
-import com.jsonyao.rapid.rpc.codec.RpcRequest;
-import com.jsonyao.rapid.rpc.codec.RpcResponse;
+import com.jsonyao.rapid.rpc.codec.RpcProtocol;
 import com.jsonyao.rapid.rpc.config.provider.ProviderConfig;
+import com.jsonyao.rapid.rpc.server.threadmodel.RpcThreadModel;
+import com.jsonyao.rapid.rpc.transport.RpcHeartbeatHandler;
+import com.jsonyao.rapid.rpc.transport.RpcWriteMetrics;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.timeout.IdleStateHandler;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 基于Netty实现RPC框架: 服务端
@@ -28,12 +31,41 @@ public class RpcServer {
     private EventLoopGroup workerGroup = new NioEventLoopGroup();
 
     /**
-     * interfaceName-interfaceImplClass Bean
+     * 不可变的服务分发表: (接口, 方法签名)-RpcInvoker => 注册服务时整体替换, 保证Server启动后注册的服务也能被安全地发布给worker线程
      */
-    private volatile Map<String, Object> handlerMap = new HashMap<>();
+    private final AtomicReference<RpcDispatchTable> dispatchTable = new AtomicReference<>(RpcDispatchTable.EMPTY);
+
+    /**
+     * 线程模型: 整个Server共享, 所有连接的请求都分发到这里执行
+     */
+    private final RpcThreadModel threadModel;
+
+    private final RpcServerOptions options;
+
+    /**
+     * 所有连接共享的写出统计
+     */
+    private final RpcWriteMetrics writeMetrics = new RpcWriteMetrics();
+
+    /**
+     * 所有连接共享的请求处理统计
+     */
+    private final RpcServerMetrics metrics = new RpcServerMetrics();
+
+    /**
+     * 自适应并发限制: 整个Server共享, 没有启用时为空
+     */
+    private final RpcConcurrencyLimiter limiter;
 
     public RpcServer(String serverAddress) throws InterruptedException {
+        this(serverAddress, new RpcServerOptions());
+    }
+
+    public RpcServer(String serverAddress, RpcServerOptions options) throws InterruptedException {
         this.serverAddress = serverAddress;
+        this.options = options;
+        this.threadModel = RpcThreadModel.newThreadModel(options.getThreadModel(), options.getThreads(), options.getQueueCapacity());
+        this.limiter = options.getConcurrencyLimit().isEnabled() ? new RpcConcurrencyLimiter(options.getConcurrencyLimit()) : null;
         this.start();
     }
 
@@ -48,19 +80,27 @@ public class RpcServer {
                 .channel(NioServerSocketChannel.class)
                 // tcp => sync + accept = backlog => 指的是队列长度
                 .option(ChannelOption.SO_BACKLOG, 1024)
+                // 池化的直接内存: 编码器直接序列化到池化的ByteBuf中
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel ch) throws Exception {
                         ChannelPipeline pipeline = ch.pipeline();
 
-                        // 编解码的handler => Server端是对RpcRequest解码, 对RpcResponse编码
-                        // 定义Netty数据包解析规则: 最大数据包大小、数据包起始位置、数据包包头长度
-                        pipeline.addLast(new LengthFieldBasedFrameDecoder(65536, 0, 4, 0, 0));
-                        pipeline.addLast(new RpcDecoder(RpcRequest.class));
-                        pipeline.addLast(new RpcEncoder(RpcResponse.class));
+                        // 编解码的handler => Server端是对RpcRequest解码(只解析协议头), 对RpcResponse编码
+                        // 定义Netty数据包解析规则: 最大数据包大小、包体长度字段偏移量、包体长度字段长度
+                        pipeline.addLast(new LengthFieldBasedFrameDecoder(RpcProtocol.MAX_FRAME_LENGTH, RpcProtocol.LENGTH_FIELD_OFFSET, RpcProtocol.LENGTH_FIELD_LENGTH, 0, 0));
+                        pipeline.addLast(new RpcDecoder());
+                        pipeline.addLast(new RpcEncoder());
+
+                        // 心跳: 回复Client端的心跳, 连续多个间隔没有收到任何数据包时关闭连接
+                        if(options.getHeartbeatIntervalMillis() > 0) {
+                            pipeline.addLast(new IdleStateHandler(options.getHeartbeatIntervalMillis(), 0, 0, TimeUnit.MILLISECONDS));
+                            pipeline.addLast(new RpcHeartbeatHandler(false, options.getHeartbeatMissThreshold()));
+                        }
 
                         // 实际业务处理器rpcClientHandler
-                        pipeline.addLast(new RpcServerHandler(handlerMap));
+                        pipeline.addLast(new RpcServerHandler(dispatchTable, threadModel, options, writeMetrics, metrics, limiter));
                     }
                 });
 
@@ -97,8 +137,8 @@ public class RpcServer {
     /**
      * 程序接口注册器
      */
-    public void registerProcessor(ProviderConfig providerConfig) {
-        handlerMap.put(providerConfig.getInterfaceName(), providerConfig.getRef());
+    public synchronized void registerProcessor(ProviderConfig providerConfig) {
+        dispatchTable.set(dispatchTable.get().register(providerConfig));
     }
 
     /**
@@ -107,5 +147,38 @@ public class RpcServer {
     public void close() {
         bossGroup.shutdownGracefully();
         workerGroup.shutdownGracefully();
+        threadModel.shutdown();
+    }
+
+    /**
+     * 线程模型: 可以获取队列深度等指标
+     * @return
+     */
+    public RpcThreadModel getThreadModel() {
+        return threadModel;
+    }
+
+    /**
+     * 写出统计: 可以获取每次flush合并的响应数
+     * @return
+     */
+    public RpcWriteMetrics getWriteMetrics() {
+        return writeMetrics;
+    }
+
+    /**
+     * 请求处理统计: 可以获取因过期被丢弃、因过载被拒绝的请求数
+     * @return
+     */
+    public RpcServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 自适应并发限制: 可以获取当前的并发上限
+     * @return 没有启用时为空
+     */
+    public RpcConcurrencyLimiter getLimiter() {
+        return limiter;
     }
 }
@@ -0,0 +1,101 @@
+package com.jsonyao.rapid.rpc.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于Netty实现RPC框架: Server端一次请求的执行状态, 用于响应Client端的取消
+ *      1. QUEUED -> RUNNING -> DONE: 正常执行并写回响应
+ *      2. QUEUED -> CANCELLED: 排队期间被取消, 出队后直接跳过, 不反序列化也不执行
+ *      3. RUNNING -> CANCELLED: 执行中被取消, 服务开启interruptOnCancel时中断执行线程, 否则等它执行完, 两种情况都不再写回响应
+ *      4. 中断期间短暂处于INTERRUPTING: 执行线程结束时等待中断完成再清除中断标记, 避免中断泄漏到线程池中的下一个任务
+ */
+final class RpcServerCall {
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int CANCELLED = 3;
+    private static final int INTERRUPTING = 4;
+
+    // 取消的结果
+    static final int CANCEL_NONE = 0;
+    static final int CANCEL_QUEUED = 1;
+    static final int CANCEL_RUNNING = 2;
+    static final int CANCEL_INTERRUPTED = 3;
+
+    private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+    /**
+     * 执行线程: 只在RUNNING期间不为空
+     */
+    private volatile Thread runner;
+
+    /**
+     * 服务方法是否允许被中断: 找到调用器后才知道
+     */
+    private volatile boolean interruptible;
+
+    private volatile boolean interrupted;
+
+    /**
+     * 出队开始执行
+     * @return 排队期间已经被取消时返回false
+     */
+    boolean start() {
+        runner = Thread.currentThread();
+        if(state.compareAndSet(QUEUED, RUNNING)) {
+            return true;
+        }
+        runner = null;
+        return false;
+    }
+
+    void setInterruptible(boolean interruptible) {
+        this.interruptible = interruptible;
+    }
+
+    boolean isCancelled() {
+        int current = state.get();
+        return current == CANCELLED || current == INTERRUPTING;
+    }
+
+    /**
+     * 执行结束: 由执行线程调用
+     * @return 是否需要写回响应, 被取消时返回false
+     */
+    boolean finish() {
+        if(state.compareAndSet(RUNNING, DONE)) {
+            runner = null;
+            return true;
+        }
+        if(runner != Thread.currentThread()) {
+            return false;
+        }
+        while (state.get() == INTERRUPTING) {
+            Thread.yield();
+        }
+        runner = null;
+        if(interrupted) {
+            Thread.interrupted();
+        }
+        return false;
+    }
+
+    /**
+     * 取消: 由IO线程在收到取消帧或者连接关闭时调用
+     * @param mayInterruptIfRunning Client端是否允许中断
+     * @return 取消的结果: CANCEL_NONE代表已经执行完
+     */
+    int cancel(boolean mayInterruptIfRunning) {
+        if(state.compareAndSet(QUEUED, CANCELLED)) {
+            return CANCEL_QUEUED;
+        }
+        if(mayInterruptIfRunning && interruptible && state.compareAndSet(RUNNING, INTERRUPTING)) {
+            interrupted = true;
+            runner.interrupt();
+            state.set(CANCELLED);
+            return CANCEL_INTERRUPTED;
+        }
+        return state.compareAndSet(RUNNING, CANCELLED) ? CANCEL_RUNNING : CANCEL_NONE;
+    }
+}
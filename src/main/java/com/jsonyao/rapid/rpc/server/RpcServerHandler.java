@@ -1,65 +1,232 @@
 package com.jsonyao.rapid.rpc.server;
 
+import com.jsonyao.rapid.rpc.codec.RpcFrame;
+import com.jsonyao.rapid.rpc.codec.RpcHandshake;
+import com.jsonyao.rapid.rpc.codec.RpcMessage;
+import com.jsonyao.rapid.rpc.codec.RpcProtocol;
 import com.jsonyao.rapid.rpc.codec.RpcRequest;
 import com.jsonyao.rapid.rpc.codec.RpcResponse;
+import com.jsonyao.rapid.rpc.server.threadmodel.RpcThreadModel;
+import com.jsonyao.rapid.rpc.transport.RpcContext;
+import com.jsonyao.rapid.rpc.transport.RpcWriteMetrics;
+import com.jsonyao.rapid.rpc.transport.RpcWriteQueue;
+import com.jsonyao.rapid.rpc.utils.StripedLongObjectMap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import lombok.extern.slf4j.Slf4j;
-import net.sf.cglib.reflect.FastClass;
-import net.sf.cglib.reflect.FastMethod;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 基于Netty实现RPC框架: Server业务处理器
  */
 @Slf4j
-public class RpcServerHandler extends SimpleChannelInboundHandler<RpcRequest> {
+public class RpcServerHandler extends SimpleChannelInboundHandler<RpcFrame> {
 
     /**
-     * interfaceName-interfaceImplClass Bean
+     * 不可变的服务分发表: (接口, 方法签名)-RpcInvoker
      */
-    private Map<String, Object> handlerMap;
+    private final AtomicReference<RpcDispatchTable> dispatchTable;
 
     /**
-     * 任务线程池: 用于异步提交任务, 从而不阻塞worker线程
+     * 线程模型: 整个Server共享, 用于异步提交任务, 从而不阻塞worker线程
      */
-    private ThreadPoolExecutor executor = new ThreadPoolExecutor(16, 16, 600, TimeUnit.SECONDS, new ArrayBlockingQueue<>(65536));
+    private final RpcThreadModel threadModel;
 
-    public RpcServerHandler(Map<String, Object> handlerMap) {
-        this.handlerMap = handlerMap;
+    private final RpcServerOptions options;
+
+    /**
+     * 合并写出队列: 业务线程写出的响应在EventLoop上批量flush
+     */
+    private final RpcWriteMetrics writeMetrics;
+    private RpcWriteQueue writeQueue;
+
+    /**
+     * 所有连接共享的请求处理统计
+     */
+    private final RpcServerMetrics metrics;
+
+    /**
+     * 自适应并发限制: 整个Server共享, 没有启用时为空
+     */
+    private final RpcConcurrencyLimiter limiter;
+
+    /**
+     * requestId-执行状态: 本连接上还没有执行完的请求, 收到取消帧时据此跳过或者中断
+     */
+    private final StripedLongObjectMap<RpcServerCall> calls = new StripedLongObjectMap<>();
+
+    public RpcServerHandler(AtomicReference<RpcDispatchTable> dispatchTable, RpcThreadModel threadModel, RpcServerOptions options, RpcWriteMetrics writeMetrics,
+                            RpcServerMetrics metrics, RpcConcurrencyLimiter limiter) {
+        this.dispatchTable = dispatchTable;
+        this.threadModel = threadModel;
+        this.options = options;
+        this.writeMetrics = writeMetrics;
+        this.metrics = metrics;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+        super.channelRegistered(ctx);
+        this.writeQueue = new RpcWriteQueue(ctx.channel(), options.isWriteCoalescing(), options.getMaxWriteBatch(), writeMetrics);
+    }
+
+    /**
+     * 连接关闭: 响应已经无法写回, 未执行完的请求全部取消
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        super.channelInactive(ctx);
+        List<RpcServerCall> abandoned = calls.removeAll();
+        for (RpcServerCall call : abandoned) {
+            metrics.recordCancelled(call.cancel(true));
+        }
     }
 
     /**
-     * Server业务处理
+     * Server业务处理: 根据协议头路由, 包体的反序列化放到任务线程池中执行, 不占用worker线程
      * @param ctx
-     * @param rpcRequest
+     * @param frame
      * @throws Exception
      */
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, RpcRequest rpcRequest) throws Exception {
-        executor.submit(new Runnable() {
+    protected void channelRead0(ChannelHandlerContext ctx, RpcFrame frame) throws Exception {
+        byte type = frame.getType();
+        // 握手: 下发方法字典
+        if(type == RpcProtocol.TYPE_HANDSHAKE) {
+            ctx.writeAndFlush(new RpcMessage(RpcProtocol.TYPE_HANDSHAKE, frame.getRequestId(), dispatchTable.get().handshake()));
+            return;
+        }
+        // 取消: Client端已经放弃的请求, 还在排队时跳过, 执行中时按服务配置中断
+        if(type == RpcProtocol.TYPE_CANCEL) {
+            RpcServerCall call = calls.remove(frame.getRequestId());
+            if(call != null) {
+                metrics.recordCancelled(call.cancel(frame.getStatus() == RpcProtocol.CANCEL_MAY_INTERRUPT));
+            }
+            return;
+        }
+        if(type != RpcProtocol.TYPE_REQUEST && type != RpcProtocol.TYPE_ONEWAY) {
+            return;
+        }
+
+        // 超出并发上限: 不进入线程模型排队, 立即返回服务端过载
+        long arrivalNanos = System.nanoTime();
+        if(limiter != null && !limiter.tryAcquire()) {
+            overloaded(frame, type);
+            return;
+        }
+
+        // SimpleChannelInboundHandler会在channelRead0返回后释放frame, 异步处理前需要先retain
+        frame.retain();
+        try {
+            dispatch(ctx, frame, type, arrivalNanos);
+        } catch (RejectedExecutionException e) {
+            frame.release();
+            calls.remove(frame.getRequestId());
+            if(limiter != null) {
+                limiter.release(-1);
+            }
+            log.warn("rpc server reject request, requestId: " + frame.getRequestId() + ", cause: " + e.getMessage());
+            overloaded(frame, type);
+        }
+    }
+
+    /**
+     * 服务端过载: 请求没有执行, 返回不带包体的过载响应, Client端立即失败并可以换一个地址重试, 而不是等到超时
+     * @param frame
+     * @param type
+     */
+    private void overloaded(RpcFrame frame, byte type) {
+        metrics.recordOverloaded();
+        if(type == RpcProtocol.TYPE_REQUEST) {
+            writeQueue.write(new RpcMessage(RpcProtocol.TYPE_RESPONSE, RpcProtocol.STATUS_OVERLOADED, frame.getRequestId(), null));
+        }
+    }
+
+    /**
+     * 分发到线程模型中执行
+     *      出队时先检查是否已经被取消、是否已经超过截止时间: 在队列中等到Client端已经放弃的请求直接丢弃, 不执行也不响应
+     *      单向请求没有取消, 不登记执行状态
+     * @param ctx
+     * @param frame
+     * @param type
+     * @param arrivalNanos 收到请求的时间, 请求的剩余时间从这里开始计算
+     */
+    private void dispatch(ChannelHandlerContext ctx, RpcFrame frame, byte type, long arrivalNanos) {
+        final RpcServerCall call = type == RpcProtocol.TYPE_REQUEST ? new RpcServerCall() : null;
+        if(call != null) {
+            calls.put(frame.getRequestId(), call);
+        }
+        threadModel.dispatch(new Runnable() {
             @Override
             public void run() {
+                long requestId = frame.getRequestId();
                 RpcResponse rpcResponse = new RpcResponse();
-                rpcResponse.setRequestId(rpcRequest.getRequestId());
+                rpcResponse.setRequestId(requestId);
+                RpcContext context = RpcContext.getContext();
+                boolean respond = true;
+                boolean invoked = false;
                 try {
-                    // 具体Server业务处理: 解析Request请求, 并且通过GGLIB反射调用具体的本地服务代理方法
-                    Object result = handler(rpcRequest);
+                    // 排队期间已经被取消: 不反序列化也不执行
+                    if(call != null && !call.start()) {
+                        return;
+                    }
+                    RpcRequest rpcRequest = frame.decodeBody(RpcRequest.class);
+                    rpcRequest.setRequestId(requestId);
+
+                    // 过期的请求直接丢弃
+                    if(rpcRequest.getTimeoutMillis() > 0) {
+                        long deadlineNanos = arrivalNanos + TimeUnit.MILLISECONDS.toNanos(rpcRequest.getTimeoutMillis());
+                        if(System.nanoTime() - deadlineNanos >= 0) {
+                            metrics.recordExpired();
+                            log.debug("rpc server drop expired request, requestId: " + requestId + ", timeout: " + rpcRequest.getTimeoutMillis() + "ms");
+                            return;
+                        }
+                        // 剩余时间传递给服务方法内部发起的嵌套调用
+                        context.setDeadlineNanos(deadlineNanos);
+                    }
+
+                    // 具体Server业务处理: 解析Request请求, 并且通过预先解析好的调用器调用具体的本地服务方法
+                    invoked = true;
+                    Object result = handler(rpcRequest, call);
                     rpcResponse.setResult(result);
                 } catch (Throwable t) {
+                    // 返回业务方法本身抛出的异常, 而不是反射调用的包装异常
+                    if(t instanceof InvocationTargetException && t.getCause() != null) {
+                        t = t.getCause();
+                    }
                     rpcResponse.setThrowable(t);
                     log.error("rpc server handle request Throwable: " + t);
+                } finally {
+                    context.clear();
+                    frame.release();
+                    if(call != null) {
+                        calls.remove(requestId);
+                        respond = call.finish();
+                    }
+                    if(limiter != null) {
+                        // 只有服务方法真正执行过的请求才是延迟样本: 排队期间被取消、过期丢弃的请求只反映排队时间
+                        limiter.release(invoked ? System.nanoTime() - arrivalNanos : -1);
+                    }
+                }
+
+                // 单向请求不需要响应, 被取消的请求没有人读取响应
+                if(type == RpcProtocol.TYPE_ONEWAY || !respond) {
+                    return;
                 }
 
                 // 添加handle后置处理逻辑
-                ctx.writeAndFlush(rpcResponse).addListener(new ChannelFutureListener() {
+                byte status = rpcResponse.getThrowable() == null ? RpcProtocol.STATUS_OK : RpcProtocol.STATUS_ERROR;
+                writeQueue.write(new RpcMessage(RpcProtocol.TYPE_RESPONSE, status, requestId, rpcResponse)).addListener(new ChannelFutureListener() {
                     @Override
                     public void operationComplete(ChannelFuture future) throws Exception {
                         if(future.isSuccess()) {
@@ -72,34 +239,41 @@ public class RpcServerHandler extends SimpleChannelInboundHandler<RpcRequest> {
     }
 
     /**
-     * 具体Server业务处理: 解析Request请求, 并且通过GGLIB反射调用具体的本地服务代理方法
+     * 具体Server业务处理: 解析Request请求, 从分发表中找到预先解析好的调用器直接调用
      *      1. 解析RpcRequest
-     *      2. 从handlerMap中找到具体的接口名称所绑定的具体实现类实例
-     *      3. 通过反射cglib调用具体方法: 传递相关参数, 执行相关逻辑
+     *      2. 从分发表中找到调用器: 精简请求按methodId查表, 否则按方法签名查表
+     *      3. 调用具体方法: 传递相关参数, 执行相关逻辑
      *      4. 返回响应信息给调用方
      *
      * @param request
+     * @param call 执行状态, 单向请求为空
      *
      * @return
      */
-    private Object handler(RpcRequest request) throws InvocationTargetException {
+    private Object handler(RpcRequest request, RpcServerCall call) throws InvocationTargetException {
         // 1. 解析RpcRequest
-        String className = request.getClassName();
-        String methodName = request.getMethodName();
-        Class<?>[] parameterTypes = request.getParameterTypes();
-        Object[] parameters = request.getParameters();
-
-        // 2. 从handlerMap中找到具体的接口名称所绑定的具体实现类实例
-        Object serviceRef = handlerMap.get(className);
-        Class<?> serviceRefClass = serviceRef.getClass();
-
-        // 3. 通过反射cglib调用具体方法: 传递相关参数, 执行相关逻辑
-        FastClass serviceFastClass = FastClass.create(serviceRefClass);
-        FastMethod serviceFastMethod = serviceFastClass.getMethod(methodName, parameterTypes);
-        Object invokeResult = serviceFastMethod.invoke(serviceRef, parameters);
-
-        // 4. 返回响应信息给调用方
-        return invokeResult;
+        RpcDispatchTable dispatchTable = this.dispatchTable.get();
+
+        // 2. 从分发表中找到调用器
+        RpcInvoker invoker;
+        if(request.getMethodId() > 0) {
+            invoker = dispatchTable.get(request.getMethodId());
+        } else {
+            invoker = dispatchTable.get(RpcHandshake.methodKey(request.getClassName(), request.getMethodName(), request.getParameterTypes()));
+        }
+        if(invoker == null) {
+            throw new IllegalStateException("no such rpc method, methodId: " + request.getMethodId()
+                    + ", className: " + request.getClassName() + ", methodName: " + request.getMethodName());
+        }
+
+        // 3. 调用具体方法 & 4. 返回响应信息给调用方: 反序列化期间已经被取消时不再调用
+        if(call != null) {
+            call.setInterruptible(invoker.isInterruptOnCancel());
+            if(call.isCancelled()) {
+                return null;
+            }
+        }
+        return invoker.invoke(request.getParameters());
     }
 
     /**
@@ -0,0 +1,74 @@
+package com.jsonyao.rapid.rpc.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于Netty实现RPC框架: Server端请求处理统计, 所有连接共享
+ *      expired: 出队时已经超过Client端剩余时间、没有执行就丢弃的请求数
+ *      overloaded: 并发限制或者线程模型已满, 直接返回"服务端过载"的请求数
+ *      cancelled: 被Client端取消(或者连接关闭)的请求数, 不再写回响应
+ *      cancelledQueued: 其中排队期间被取消、没有执行就跳过的请求数
+ *      interrupted: 其中执行中被中断的请求数
+ */
+public class RpcServerMetrics {
+
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder cancelledQueued = new LongAdder();
+    private final LongAdder interrupted = new LongAdder();
+
+    void recordExpired() {
+        expired.increment();
+    }
+
+    void recordOverloaded() {
+        overloaded.increment();
+    }
+
+    void recordCancelled(int result) {
+        if(result == RpcServerCall.CANCEL_NONE) {
+            return;
+        }
+        cancelled.increment();
+        if(result == RpcServerCall.CANCEL_QUEUED) {
+            cancelledQueued.increment();
+        } else if(result == RpcServerCall.CANCEL_INTERRUPTED) {
+            interrupted.increment();
+        }
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    public long getOverloaded() {
+        return overloaded.sum();
+    }
+
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    public long getCancelledQueued() {
+        return cancelledQueued.sum();
+    }
+
+    public long getInterrupted() {
+        return interrupted.sum();
+    }
+
+    public void reset() {
+        expired.reset();
+        overloaded.reset();
+        cancelled.reset();
+        cancelledQueued.reset();
+        interrupted.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "RpcServerMetrics{expired=" + getExpired() + ", overloaded=" + getOverloaded() + ", cancelled=" + getCancelled()
+                + ", cancelledQueued=" + getCancelledQueued() + ", interrupted=" + getInterrupted() + "}";
+    }
+}
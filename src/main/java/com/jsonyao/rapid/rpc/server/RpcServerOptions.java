@@ -0,0 +1,52 @@
+package com.jsonyao.rapid.rpc.server;
+
+import com.jsonyao.rapid.rpc.server.threadmodel.ThreadModelType;
+import lombok.Data;
+
+/**
+ * 基于Netty实现RPC框架: Server端可选配置
+ */
+@Data
+public class RpcServerOptions {
+
+    /**
+     * 业务分发策略
+     */
+    private ThreadModelType threadModel = ThreadModelType.FIXED;
+
+    /**
+     * 业务线程数: DIRECT、VIRTUAL忽略
+     */
+    private int threads = Math.max(16, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * 排队上限: VIRTUAL作为最大并发数
+     */
+    private int queueCapacity = 65536;
+
+    /**
+     * 是否合并写出: 多个线程并发写出的数据包在EventLoop上批量write, 一次flush
+     */
+    private boolean writeCoalescing = true;
+
+    /**
+     * 合并写出时单次flush的最大数据包数
+     */
+    private int maxWriteBatch = 128;
+
+    /**
+     * 空闲检测间隔(毫秒): 应与Client端的心跳间隔一致, 0代表不检测空闲
+     */
+    private long heartbeatIntervalMillis = 5000;
+
+    /**
+     * 连续这么多个间隔没有收到任何数据包(包括心跳)时主动关闭连接
+     */
+    private int heartbeatMissThreshold = 3;
+
+    /**
+     * 自适应并发限制配置: 超出并发上限的请求立即返回"服务端过载"
+     */
+    private ConcurrencyLimitOptions concurrencyLimit = new ConcurrencyLimitOptions();
+
+}
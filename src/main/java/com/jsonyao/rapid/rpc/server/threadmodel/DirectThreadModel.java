@@ -0,0 +1,20 @@
+package com.jsonyao.rapid.rpc.server.threadmodel;
+
+/**
+ * 基于Netty实现RPC框架: 直接在IO线程上执行, 没有排队
+ */
+public class DirectThreadModel extends RpcThreadModel {
+
+    public DirectThreadModel() {
+        super(ThreadModelType.DIRECT, Integer.MAX_VALUE);
+    }
+
+    @Override
+    protected void execute(Runnable task) {
+        task.run();
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
@@ -0,0 +1,31 @@
+package com.jsonyao.rapid.rpc.server.threadmodel;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Netty实现RPC框架: 全局共享的固定大小线程池 + 有界队列
+ */
+public class FixedThreadModel extends RpcThreadModel {
+
+    private final ThreadPoolExecutor executor;
+
+    public FixedThreadModel(int threads, int queueCapacity) {
+        super(ThreadModelType.FIXED, threads + queueCapacity);
+        this.executor = new ThreadPoolExecutor(threads, threads, 600, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new DefaultThreadFactory("rapid-rpc-server-fixed", true));
+    }
+
+    @Override
+    protected void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,27 @@
+package com.jsonyao.rapid.rpc.server.threadmodel;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 基于Netty实现RPC框架: 工作窃取的ForkJoinPool => 内部队列无界, 由在途任务数来限制
+ */
+public class ForkJoinThreadModel extends RpcThreadModel {
+
+    private final ForkJoinPool executor;
+
+    public ForkJoinThreadModel(int parallelism, int queueCapacity) {
+        super(ThreadModelType.FORK_JOIN, parallelism + queueCapacity);
+        // asyncMode = true: 提交的任务之间没有join关系, FIFO调度更公平
+        this.executor = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    @Override
+    protected void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,143 @@
+package com.jsonyao.rapid.rpc.server.threadmodel;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于Netty实现RPC框架: Server端线程模型 => 整个Server共享一个, 而不是每个连接一个线程池
+ *      1. 所有策略都有上限: 在途任务数(排队 + 执行中)超过maxInFlight时直接拒绝, 抛出RejectedExecutionException
+ *      2. 队列深度等指标: queueDepth、maxQueueDepth、activeCount、rejectedCount、completedCount
+ */
+@Slf4j
+public abstract class RpcThreadModel {
+
+    private final ThreadModelType type;
+
+    private final int maxInFlight;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    private final AtomicInteger active = new AtomicInteger(0);
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger(0);
+
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+
+    private final AtomicLong completedCount = new AtomicLong(0);
+
+    protected RpcThreadModel(ThreadModelType type, int maxInFlight) {
+        this.type = type;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 创建线程模型
+     * @param type 分发策略
+     * @param threads 线程数(DIRECT、VIRTUAL忽略)
+     * @param queueCapacity 排队上限: VIRTUAL没有排队, 作为最大并发数
+     * @return
+     */
+    public static RpcThreadModel newThreadModel(ThreadModelType type, int threads, int queueCapacity) {
+        switch (type) {
+            case DIRECT:
+                return new DirectThreadModel();
+            case FORK_JOIN:
+                return new ForkJoinThreadModel(threads, queueCapacity);
+            case VIRTUAL:
+                if(VirtualThreadModel.isSupported()) {
+                    return new VirtualThreadModel(queueCapacity);
+                }
+                log.warn("virtual threads are not supported by current jdk, fall back to " + ThreadModelType.FIXED);
+                return new FixedThreadModel(threads, queueCapacity);
+            case FIXED:
+            default:
+                return new FixedThreadModel(threads, queueCapacity);
+        }
+    }
+
+    /**
+     * 分发任务
+     * @param task
+     * @throws RejectedExecutionException 在途任务数超过上限, 或者线程模型已关闭
+     */
+    public void dispatch(final Runnable task) throws RejectedExecutionException {
+        int current = inFlight.incrementAndGet();
+        if(current > maxInFlight) {
+            inFlight.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException(type + " thread model is full, max in flight: " + maxInFlight);
+        }
+        updateMaxQueueDepth(current - active.get());
+
+        try {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    active.incrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        active.decrementAndGet();
+                        inFlight.decrementAndGet();
+                        completedCount.incrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private void updateMaxQueueDepth(int queueDepth) {
+        int max;
+        while (queueDepth > (max = maxQueueDepth.get())) {
+            if(maxQueueDepth.compareAndSet(max, queueDepth)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 具体的执行方式
+     * @param task
+     */
+    protected abstract void execute(Runnable task);
+
+    /**
+     * 关闭线程模型
+     */
+    public abstract void shutdown();
+
+    public ThreadModelType getType() {
+        return type;
+    }
+
+    /**
+     * 已提交但还没开始执行的任务数
+     * @return
+     */
+    public int getQueueDepth() {
+        return Math.max(0, inFlight.get() - active.get());
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+}
@@ -0,0 +1,28 @@
+package com.jsonyao.rapid.rpc.server.threadmodel;
+
+/**
+ * 基于Netty实现RPC框架: Server端业务分发策略
+ */
+public enum ThreadModelType {
+
+    /**
+     * 直接在IO线程上执行: 适用于非阻塞的轻量业务
+     */
+    DIRECT,
+
+    /**
+     * 全局共享的固定大小线程池
+     */
+    FIXED,
+
+    /**
+     * 工作窃取的ForkJoinPool
+     */
+    FORK_JOIN,
+
+    /**
+     * 每个请求一个虚拟线程: 仅在支持虚拟线程的JDK上可用, 否则退化为FIXED
+     */
+    VIRTUAL
+
+}
@@ -0,0 +1,50 @@
+package com.jsonyao.rapid.rpc.server.threadmodel;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 基于Netty实现RPC框架: 每个请求一个虚拟线程 => 没有排队, 由在途任务数(即最大并发数)来限制
+ *      通过反射创建, 在不支持虚拟线程的JDK上也可以正常编译运行
+ */
+public class VirtualThreadModel extends RpcThreadModel {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactoryMethod();
+
+    private final ExecutorService executor;
+
+    public VirtualThreadModel(int maxConcurrency) {
+        super(ThreadModelType.VIRTUAL, maxConcurrency);
+        if(!isSupported()) {
+            throw new IllegalStateException("virtual threads are not supported by current jdk");
+        }
+        try {
+            this.executor = (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    private static Method findFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,62 @@
+package com.jsonyao.rapid.rpc.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Netty实现RPC框架: 线程级调用上下文, 用于在嵌套调用之间传递截止时间
+ *      1. Server端执行服务方法前按请求携带的剩余时间设置截止时间, 执行完清除
+ *      2. 服务方法内部发起的RPC调用读取截止时间: 超时时间不超过剩余时间, 已经过期时不再发送
+ *      3. 只在执行服务方法的线程上生效: 服务方法把调用交给其他线程时需要自己传递剩余时间
+ */
+public final class RpcContext {
+
+    private static final ThreadLocal<RpcContext> LOCAL = new ThreadLocal<RpcContext>() {
+        @Override
+        protected RpcContext initialValue() {
+            return new RpcContext();
+        }
+    };
+
+    /**
+     * 当前线程的上下文: 不为空
+     * @return
+     */
+    public static RpcContext getContext() {
+        return LOCAL.get();
+    }
+
+    /**
+     * 截止时间(System.nanoTime), 0代表没有截止时间
+     */
+    private long deadlineNanos;
+
+    private RpcContext() {
+
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public void setDeadlineNanos(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 清除截止时间: 服务方法执行完后调用, 线程被复用时不会带到下一个请求
+     */
+    public void clear() {
+        this.deadlineNanos = 0;
+    }
+
+    /**
+     * 剩余时间(毫秒)
+     * @return 没有截止时间时返回Long.MAX_VALUE, 已经过期时返回0或者负数
+     */
+    public long getRemainingMillis() {
+        if(deadlineNanos == 0) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+}
@@ -0,0 +1,74 @@
+package com.jsonyao.rapid.rpc.transport;
+
+import com.jsonyao.rapid.rpc.codec.RpcFrame;
+import com.jsonyao.rapid.rpc.codec.RpcMessage;
+import com.jsonyao.rapid.rpc.codec.RpcProtocol;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于Netty实现RPC框架: 心跳处理器, 放在IdleStateHandler和编解码器之后, 业务处理器之前
+ *      1. 读空闲一次记一次丢失, 收到任何数据包都清零: 连续丢失达到阈值时主动关闭连接
+ *      2. Client端每次读空闲都发送一次心跳, Server端收到心跳立即回复, 所以连接正常时Client端不会连续读空闲
+ *      3. 心跳包在这里处理掉, 不会传到业务处理器
+ *      关闭连接后, 由业务处理器的channelInactive让未完成的请求立即失败, 由连接池的断线监听把连接移出选择范围并重连
+ */
+@Slf4j
+public class RpcHeartbeatHandler extends ChannelInboundHandlerAdapter {
+
+    /**
+     * true: Client端, 读空闲时发送心跳; false: Server端, 收到心跳时回复
+     */
+    private final boolean client;
+
+    /**
+     * 连续丢失的心跳数达到该值时关闭连接
+     */
+    private final int missThreshold;
+
+    /**
+     * 连续丢失的心跳数: 只在EventLoop线程上读写
+     */
+    private int misses;
+
+    public RpcHeartbeatHandler(boolean client, int missThreshold) {
+        this.client = client;
+        this.missThreshold = Math.max(1, missThreshold);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        misses = 0;
+        if(msg instanceof RpcFrame && ((RpcFrame) msg).getType() == RpcProtocol.TYPE_HEARTBEAT) {
+            RpcFrame frame = (RpcFrame) msg;
+            try {
+                if(!client) {
+                    ctx.writeAndFlush(new RpcMessage(RpcProtocol.TYPE_HEARTBEAT, frame.getRequestId(), null));
+                }
+            } finally {
+                frame.release();
+            }
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if(!(evt instanceof IdleStateEvent) || ((IdleStateEvent) evt).state() != IdleState.READER_IDLE) {
+            ctx.fireUserEventTriggered(evt);
+            return;
+        }
+        if(++misses >= missThreshold) {
+            log.warn("heartbeat lost " + misses + " times, close channel, remotePeer: " + ctx.channel().remoteAddress());
+            ctx.close();
+            return;
+        }
+        if(client) {
+            ctx.writeAndFlush(new RpcMessage(RpcProtocol.TYPE_HEARTBEAT, 0, null));
+        }
+    }
+}
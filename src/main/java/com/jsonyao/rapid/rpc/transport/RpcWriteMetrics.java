@@ -0,0 +1,46 @@
+package com.jsonyao.rapid.rpc.transport;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于Netty实现RPC框架: 写出统计
+ *      1. frames: 写出的数据包数
+ *      2. flushes: flush次数, 每次flush对应一次writev系统调用, flushes/frames即每个请求的系统调用数
+ */
+public class RpcWriteMetrics {
+
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    void record(int frames) {
+        this.frames.add(frames);
+        this.flushes.increment();
+    }
+
+    public long getFrames() {
+        return frames.sum();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * 平均每次flush合并的数据包数
+     * @return
+     */
+    public double getFramesPerFlush() {
+        long flushes = getFlushes();
+        return flushes == 0 ? 0 : (double) getFrames() / flushes;
+    }
+
+    public void reset() {
+        frames.reset();
+        flushes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "RpcWriteMetrics{frames=" + getFrames() + ", flushes=" + getFlushes() + ", framesPerFlush=" + getFramesPerFlush() + "}";
+    }
+}
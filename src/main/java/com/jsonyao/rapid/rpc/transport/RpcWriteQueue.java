@@ -0,0 +1,113 @@
+package com.jsonyao.rapid.rpc.transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于Netty实现RPC框架: 合并写出队列, 每个连接一个
+ *      1. 任意线程写出的数据包先进入MPSC队列, 只有队列从空闲变为非空闲时才向EventLoop提交一次排空任务
+ *      2. EventLoop排空队列时逐个write, 最后只flush一次: 高并发时多个数据包合并成一次writev, 空闲时单个请求也会立即flush
+ *      3. 单次最多排空maxBatch个数据包, 剩余的重新提交, 避免一个连接长时间占用EventLoop
+ */
+public class RpcWriteQueue implements Runnable {
+
+    private final Channel channel;
+    private final boolean coalescing;
+    private final int maxBatch;
+    private final RpcWriteMetrics metrics;
+
+    private final Queue<PendingWrite> queue = PlatformDependent.newMpscQueue();
+
+    /**
+     * 是否已经向EventLoop提交了排空任务
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @param channel
+     * @param coalescing 是否合并写出, false时每个数据包直接writeAndFlush
+     * @param maxBatch 单次排空的最大数据包数
+     * @param metrics 写出统计, 可以多个连接共享
+     */
+    public RpcWriteQueue(Channel channel, boolean coalescing, int maxBatch, RpcWriteMetrics metrics) {
+        this.channel = channel;
+        this.coalescing = coalescing;
+        this.maxBatch = maxBatch;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 写出数据包: 可以在任意线程调用
+     * @param msg
+     * @return
+     */
+    public ChannelFuture write(Object msg) {
+        ChannelPromise promise = channel.newPromise();
+        if(!coalescing) {
+            metrics.record(1);
+            return channel.writeAndFlush(msg, promise);
+        }
+        queue.offer(new PendingWrite(msg, promise));
+        schedule();
+        return promise;
+    }
+
+    private void schedule() {
+        if(scheduled.compareAndSet(false, true)) {
+            try {
+                channel.eventLoop().execute(this);
+            } catch (RejectedExecutionException e) {
+                // EventLoop已经关闭: 失败所有排队的数据包
+                scheduled.set(false);
+                PendingWrite pendingWrite;
+                while ((pendingWrite = queue.poll()) != null) {
+                    pendingWrite.promise.tryFailure(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * EventLoop上排空队列: 批量write, 一次flush
+     */
+    @Override
+    public void run() {
+        int written = 0;
+        PendingWrite pendingWrite;
+        while (written < maxBatch && (pendingWrite = queue.poll()) != null) {
+            channel.write(pendingWrite.msg, pendingWrite.promise);
+            written++;
+        }
+        if(written > 0) {
+            channel.flush();
+            metrics.record(written);
+        }
+
+        // 先清除标记再检查队列: 清除标记之后入队的数据包会自己提交排空任务
+        scheduled.set(false);
+        if(!queue.isEmpty()) {
+            schedule();
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    private static final class PendingWrite {
+
+        private final Object msg;
+        private final ChannelPromise promise;
+
+        private PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
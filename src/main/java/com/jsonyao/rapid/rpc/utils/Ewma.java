@@ -0,0 +1,40 @@
+package com.jsonyao.rapid.rpc.utils;
+
+/**
+ * 基于Netty实现RPC框架: 按时间衰减的指数加权移动平均
+ *      1. 新样本的权重取决于距离上一个样本的时间: 间隔越久, 旧值衰减得越多, 空闲后恢复的地址不会一直背着旧的延迟
+ *      2. 读写都不加锁: 并发更新时可能丢失个别样本, 对负载均衡没有影响
+ */
+public class Ewma {
+
+    private final double decayNanos;
+
+    private volatile double value;
+    private volatile long timestamp;
+
+    /**
+     * @param decayNanos 衰减时间常数(纳秒)
+     */
+    public Ewma(long decayNanos) {
+        this.decayNanos = decayNanos;
+    }
+
+    public void update(double sample) {
+        long now = System.nanoTime();
+        double current = this.value;
+        if(current == 0) {
+            this.value = sample;
+        } else {
+            double weight = Math.exp(-(now - this.timestamp) / decayNanos);
+            this.value = current * weight + sample * (1 - weight);
+        }
+        this.timestamp = now;
+    }
+
+    /**
+     * @return 没有样本时为0
+     */
+    public double get() {
+        return value;
+    }
+}
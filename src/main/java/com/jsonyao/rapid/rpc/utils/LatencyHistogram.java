@@ -0,0 +1,124 @@
+package com.jsonyao.rapid.rpc.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 基于Netty实现RPC框架: 无锁的延迟直方图, 用于估算最近一段时间的延迟分位数
+ *      1. 按对数分桶: 每个2的幂区间再分4个子桶, 相对误差约19%, 对估算对冲等待时间足够
+ *      2. 只保留当前和上一个时间段: 当前时间段过期时CAS换成新的时间段, 分位数由两个时间段合并计算
+ *      3. 记录只有一次原子自增, 不分配对象
+ */
+public class LatencyHistogram {
+
+    /**
+     * 最大可以表示2^32微秒(约71分钟), 超过的计入最后一个桶
+     */
+    private static final int BUCKETS = 32 * 4;
+
+    private final long periodNanos;
+
+    private final AtomicReference<Period> current;
+
+    /**
+     * @param periodMillis 每个时间段的长度(毫秒): 分位数反映最近一到两个时间段的延迟
+     */
+    public LatencyHistogram(long periodMillis) {
+        this.periodNanos = periodMillis * 1000000L;
+        this.current = new AtomicReference<>(new Period(System.nanoTime(), null));
+    }
+
+    /**
+     * 记录一个延迟样本
+     * @param latencyNanos
+     */
+    public void record(long latencyNanos) {
+        period().counts.incrementAndGet(bucketOf(latencyNanos / 1000));
+    }
+
+    /**
+     * 估算延迟分位数
+     * @param percentile 0~1之间, 比如0.95
+     * @param minSamples 样本数少于该值时不估算
+     * @return 分位数所在桶的上界(纳秒), 样本不足时返回-1
+     */
+    public long percentile(double percentile, int minSamples) {
+        Period period = period();
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = period.counts.get(i) + (period.previous == null ? 0 : period.previous.get(i));
+            total += counts[i];
+        }
+        if(total == 0 || total < minSamples) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if(seen >= rank) {
+                return upperBoundOf(i) * 1000;
+            }
+        }
+        return upperBoundOf(BUCKETS - 1) * 1000;
+    }
+
+    /**
+     * 当前时间段: 过期时换成新的时间段, 旧时间段只保留计数作为上一个时间段
+     * @return
+     */
+    private Period period() {
+        Period period = current.get();
+        long now = System.nanoTime();
+        if(now - period.start < periodNanos) {
+            return period;
+        }
+        Period next = new Period(now, period.counts);
+        return current.compareAndSet(period, next) ? next : current.get();
+    }
+
+    /**
+     * 微秒数所在的桶: 0、1微秒各一个桶, 之后每个2的幂区间按最高位之后的两位再分4个子桶
+     * @param micros
+     * @return
+     */
+    static int bucketOf(long micros) {
+        if(micros < 2) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = exponent >= 2 ? (int) ((micros >>> (exponent - 2)) & 3) : (int) ((micros << (2 - exponent)) & 3);
+        return Math.min(BUCKETS - 1, exponent * 4 + sub);
+    }
+
+    /**
+     * 桶的上界(微秒)
+     * @param bucket
+     * @return
+     */
+    static long upperBoundOf(int bucket) {
+        if(bucket < 4) {
+            return bucket + 1;
+        }
+        int exponent = bucket / 4;
+        int sub = bucket % 4;
+        return (1L << exponent) + ((sub + 1L) << exponent) / 4;
+    }
+
+    private static final class Period {
+
+        private final long start;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        /**
+         * 上一个时间段的计数: 不再写入
+         */
+        private final AtomicLongArray previous;
+
+        private Period(long start, AtomicLongArray previous) {
+            this.start = start;
+            this.previous = previous;
+        }
+    }
+}
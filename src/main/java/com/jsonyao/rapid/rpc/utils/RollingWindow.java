@@ -0,0 +1,146 @@
+package com.jsonyao.rapid.rpc.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于Netty实现RPC框架: 无锁的滑动时间窗口, 统计最近一段时间内的请求数、失败数和延迟总和
+ *      1. 窗口分成固定数目的桶, 按当前时间落到环形数组的一个槽位上, 槽位里是旧时间段的桶时用CAS换成新桶
+ *      2. 桶内计数使用LongAdder: 每次调用都要记录, 并发写不会在同一个CAS上竞争
+ *      3. 换桶的瞬间仍在写旧桶的少量样本会丢失, 对熔断判断没有影响
+ */
+public class RollingWindow {
+
+    private final long bucketNanos;
+
+    private final int bucketCount;
+
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    /**
+     * @param windowMillis 窗口长度(毫秒)
+     * @param bucketCount 桶数: 窗口每次滑动一个桶的长度
+     */
+    public RollingWindow(long windowMillis, int bucketCount) {
+        this.bucketCount = Math.max(1, bucketCount);
+        this.bucketNanos = Math.max(1, windowMillis * 1000000L / this.bucketCount);
+        this.buckets = new AtomicReferenceArray<>(this.bucketCount);
+    }
+
+    /**
+     * 记录一次调用
+     * @param error 是否失败
+     * @param latencyNanos 延迟(纳秒)
+     */
+    public void record(boolean error, long latencyNanos) {
+        Bucket bucket = current();
+        bucket.requests.increment();
+        if(error) {
+            bucket.errors.increment();
+        }
+        bucket.latencyNanos.add(latencyNanos);
+    }
+
+    /**
+     * 汇总窗口内的所有桶: 过期的桶不计入
+     * @return
+     */
+    public Stats stats() {
+        long id = System.nanoTime() / bucketNanos;
+        long requests = 0;
+        long errors = 0;
+        long latencyNanos = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            Bucket bucket = buckets.get(i);
+            if(bucket != null && id - bucket.id < bucketCount) {
+                requests += bucket.requests.sum();
+                errors += bucket.errors.sum();
+                latencyNanos += bucket.latencyNanos.sum();
+            }
+        }
+        return new Stats(requests, errors, latencyNanos);
+    }
+
+    /**
+     * 当前时间所在的桶: 槽位上是旧时间段的桶时CAS替换, 失败说明其他线程已经换过了
+     * @return
+     */
+    private Bucket current() {
+        long id = System.nanoTime() / bucketNanos;
+        int slot = (int) Math.floorMod(id, (long) bucketCount);
+        while (true) {
+            Bucket bucket = buckets.get(slot);
+            if(bucket != null && bucket.id >= id) {
+                return bucket;
+            }
+            Bucket newBucket = new Bucket(id);
+            if(buckets.compareAndSet(slot, bucket, newBucket)) {
+                return newBucket;
+            }
+        }
+    }
+
+    private static final class Bucket {
+
+        private final long id;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+
+        private Bucket(long id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * 窗口内的统计结果
+     */
+    public static final class Stats {
+
+        private final long requests;
+        private final long errors;
+        private final long latencyNanos;
+
+        public Stats(long requests, long errors, long latencyNanos) {
+            this.requests = requests;
+            this.errors = errors;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return 没有请求时为0
+         */
+        public double getErrorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+
+        /**
+         * @return 没有请求时为0
+         */
+        public double getMeanLatencyNanos() {
+            return requests == 0 ? 0 : (double) latencyNanos / requests;
+        }
+
+        /**
+         * 合并多个窗口的统计: 比如同一地址上的多个连接
+         * @param other
+         * @return
+         */
+        public Stats add(Stats other) {
+            return new Stats(requests + other.requests, errors + other.errors, latencyNanos + other.latencyNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{requests=" + requests + ", errors=" + errors + ", meanLatency=" + (long) (getMeanLatencyNanos() / 1000) + "us}";
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.jsonyao.rapid.rpc.utils;
+
+import io.netty.util.collection.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于Netty实现RPC框架: 分段加锁的long主键Map
+ *      1. 每一段都是Netty的开放寻址LongObjectHashMap, 主键是原始long, 读写不需要装箱
+ *      2. 按照主键散列到不同的段上, 每段单独加锁, 降低多线程并发发送请求时的锁竞争
+ */
+public class StripedLongObjectMap<V> {
+
+    private final LongObjectHashMap<V>[] stripes;
+    private final int mask;
+
+    /**
+     * 元素个数: 单独计数, 选择连接时读取未完成请求数不需要逐段加锁
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    public StripedLongObjectMap() {
+        this(16);
+    }
+
+    /**
+     * @param concurrency 期望的并发度, 向上取整到2的幂次方作为分段数
+     */
+    @SuppressWarnings("unchecked")
+    public StripedLongObjectMap(int concurrency) {
+        int size = 1;
+        while (size < concurrency) {
+            size <<= 1;
+        }
+        this.stripes = new LongObjectHashMap[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new LongObjectHashMap<>();
+        }
+        this.mask = size - 1;
+    }
+
+    private LongObjectHashMap<V> stripe(long key) {
+        // 连续自增的requestId也能均匀散列到各段上
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (hash >>> 32) & mask];
+    }
+
+    public V put(long key, V value) {
+        LongObjectHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            V previous = stripe.put(key, value);
+            if(previous == null) {
+                size.incrementAndGet();
+            }
+            return previous;
+        }
+    }
+
+    public V get(long key) {
+        LongObjectHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    public V remove(long key) {
+        LongObjectHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            V previous = stripe.remove(key);
+            if(previous != null) {
+                size.decrementAndGet();
+            }
+            return previous;
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 取出并清空所有元素: 连接关闭时快速失败全部未完成的请求
+     * @return
+     */
+    public List<V> removeAll() {
+        List<V> values = new ArrayList<>();
+        for (LongObjectHashMap<V> stripe : stripes) {
+            synchronized (stripe) {
+                values.addAll(stripe.values());
+                size.addAndGet(-stripe.size());
+                stripe.clear();
+            }
+        }
+        return values;
+    }
+}
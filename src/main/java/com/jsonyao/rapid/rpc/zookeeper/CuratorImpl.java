@@ -14,6 +14,9 @@ import org.apache.curator.framework.recipes.cache.PathChildrenCache;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
 import org.apache.curator.retry.RetryNTimes;
 import org.apache.curator.utils.ThreadUtils;
 import org.apache.zookeeper.CreateMode;
@@ -41,22 +44,46 @@ public class CuratorImpl implements ZookeeperClient {
 	//	单线程的线程池监听数据缓存变更
     private final ExecutorService EVENT_THREAD_POOL = Executors.newFixedThreadPool(1, ThreadUtils.newThreadFactory("PathChildrenCache"));
     
-    //	单线程的线程池数据变更的事件监听
-    private final ExecutorService DIRECT_EXECUTOR = Executors.newFixedThreadPool(1, ThreadUtils.newThreadFactory("PathChildrenCache"));
+    //	数据变更的事件监听: 按服务路径分区的单线程线程池, 同一个服务的事件串行处理, 不同服务之间并行处理
+    private final ExecutorService[] EVENT_DISPATCHERS;
     
     //	客户端实例对象
 	private CuratorFramework client;
 	
 	public CuratorImpl(String address, int connectionTimeout) {
-		creator(address, connectionTimeout);
+		this(address, connectionTimeout, 1);
+	}
+	
+	/**
+	 * @param address	服务地址
+	 * @param connectionTimeout	 连接超时时间
+	 * @param eventThreads	事件分发的线程数: 按服务路径分区
+	 */
+	public CuratorImpl(String address, int connectionTimeout, int eventThreads) {
+		this(address, connectionTimeout, eventThreads, true);
+	}
+	
+	/**
+	 * @param address	服务地址
+	 * @param connectionTimeout	 连接超时时间
+	 * @param eventThreads	事件分发的线程数: 按服务路径分区
+	 * @param waitConnected	是否阻塞等待会话建立: 为false时立即返回, 注册中心不可用也不会阻塞启动, 之后的操作在会话建立之前会一直重试
+	 */
+	public CuratorImpl(String address, int connectionTimeout, int eventThreads, boolean waitConnected) {
+		EVENT_DISPATCHERS = new ExecutorService[Math.max(1, eventThreads)];
+		for (int i = 0; i < EVENT_DISPATCHERS.length; i++) {
+			EVENT_DISPATCHERS[i] = Executors.newSingleThreadExecutor(ThreadUtils.newThreadFactory("ZookeeperEventDispatcher"));
+		}
+		creator(address, connectionTimeout, waitConnected);
 	}
 	
 	/**
 	 * creator
 	 * @param address	服务地址
 	 * @param connectionTimeout	 连接超时时间
+	 * @param waitConnected	是否阻塞等待会话建立
 	 */
-	private void creator(String address, int connectionTimeout){
+	private void creator(String address, int connectionTimeout, boolean waitConnected){
         client = CuratorFrameworkFactory.builder()
         		//	192.168.11.221:2181,192.168.11.222:2181,192.168.11.223:2181
                 .connectString(address)
@@ -73,6 +100,9 @@ public class CuratorImpl implements ZookeeperClient {
         
         //	启动客户端实例对象 建立连接
         client.start();
+        if (!waitConnected) {
+        	return;
+        }
         try {
             // 同步阻塞等待client异步创建完成
             latch.await();
@@ -157,6 +187,7 @@ public class CuratorImpl implements ZookeeperClient {
 		cache.start(StartMode.POST_INITIALIZED_EVENT);
 		LOGGER.info("add listener parent path start, path : {}", parent);
 		
+        //	在缓存线程上转换事件, 再按服务路径分发
         cache.getListenable().addListener(new PathChildrenCacheListener() {
         	
         	//	直接子节点数据(包括path和data)发生变化
@@ -164,35 +195,117 @@ public class CuratorImpl implements ZookeeperClient {
                 if (event.getData() == null) return;
                 switch (event.getType()) {
                     case CHILD_ADDED:
-                        listener.nodeChanged(CuratorImpl.this,
-                        		new ChangedEvent(event.getData().getPath(),
-                        				new String(event.getData().getData()),
+                        dispatch(listener, new ChangedEvent(event.getData().getPath(),
+                        				dataOf(event.getData().getData()),
                         				ChangedEvent.Type.CHILD_ADDED));
                         break;
                     case CHILD_REMOVED:
-                        listener.nodeChanged(CuratorImpl.this, 
-                        		new ChangedEvent(event.getData().getPath(),
-                        				new String(event.getData().getData()),
+                        dispatch(listener, new ChangedEvent(event.getData().getPath(),
+                        				dataOf(event.getData().getData()),
                         				ChangedEvent.Type.CHILD_REMOVED));
                         break;
                     case CHILD_UPDATED:
-                        listener.nodeChanged(CuratorImpl.this,
-                        		new ChangedEvent(event.getData().getPath(),
-                        				new String(event.getData().getData()),
+                        dispatch(listener, new ChangedEvent(event.getData().getPath(),
+                        				dataOf(event.getData().getData()),
                         				ChangedEvent.Type.CHILD_UPDATED));
                         break;
                 }
             }
-        }, DIRECT_EXECUTOR);
+        });
         
     }
     
+    @SuppressWarnings({"resource", "incomplete-switch"})
+    public void listener4TreePath(final String root, int maxDepth, final NodeListener listener) throws Exception {
+    	
+    	//	整棵子树一个本地缓存: 只有一组Watcher, 不需要为每个子节点单独建立缓存
+    	TreeCache cache = TreeCache.newBuilder(client, root)
+    			.setCacheData(true)		//	缓存数据, 删除事件也能拿到节点数据
+    			.setMaxDepth(maxDepth)	//	只监听到指定深度
+    			.setExecutor(EVENT_THREAD_POOL)
+    			.build();
+    	
+    	cache.getListenable().addListener(new TreeCacheListener() {
+    		
+    		//	子树中任意节点数据(包括path和data)发生变化
+			public void childEvent(CuratorFramework curator, TreeCacheEvent event) throws Exception {
+				//	连接状态事件和根节点自身的事件不需要处理
+				if (event.getData() == null || root.equals(event.getData().getPath())) return;
+				switch (event.getType()) {
+					case NODE_ADDED:
+						dispatch(listener, new ChangedEvent(event.getData().getPath(),
+								dataOf(event.getData().getData()),
+								ChangedEvent.Type.CHILD_ADDED));
+						break;
+					case NODE_REMOVED:
+						dispatch(listener, new ChangedEvent(event.getData().getPath(),
+								dataOf(event.getData().getData()),
+								ChangedEvent.Type.CHILD_REMOVED));
+						break;
+					case NODE_UPDATED:
+						dispatch(listener, new ChangedEvent(event.getData().getPath(),
+								dataOf(event.getData().getData()),
+								ChangedEvent.Type.CHILD_UPDATED));
+						break;
+				}
+			}
+		});
+    	
+    	cache.start();
+    	LOGGER.info("add listener tree path start, path : {}, maxDepth : {}", root, maxDepth);
+    }
+    
+    /**
+     * dispatch 按服务路径分发事件: 同一个服务的事件总是落到同一个线程上, 保证顺序
+     * @param listener
+     * @param event
+     */
+    private void dispatch(final NodeListener listener, final ChangedEvent event) {
+    	EVENT_DISPATCHERS[partition(event.getPath())].execute(new Runnable() {
+			public void run() {
+				try {
+					listener.nodeChanged(CuratorImpl.this, event);
+				} catch (Exception e) {
+					LOGGER.error("node changed listener error, path : " + event.getPath(), e);
+				}
+			}
+		});
+    }
+    
+    /**
+     * partition 服务路径的分区: 取前两级路径, 即 /rapid-rpc/interfaceName:version
+     * @param path
+     * @return
+     */
+    private int partition(String path) {
+    	if (EVENT_DISPATCHERS.length == 1) {
+    		return 0;
+    	}
+    	int end = path.indexOf('/', 1);
+    	end = end < 0 ? -1 : path.indexOf('/', end + 1);
+    	if (end < 0) {
+    		end = path.length();
+    	}
+    	int hash = 0;
+    	for (int i = 0; i < end; i++) {
+    		hash = 31 * hash + path.charAt(i);
+    	}
+    	return (hash & Integer.MAX_VALUE) % EVENT_DISPATCHERS.length;
+    }
+    
+    private static String dataOf(byte[] data) {
+    	return data == null ? null : new String(data);
+    }
+    
     
     @PreDestroy
     public void close() {
 		if (client != null) {
 			try {
 				this.client.close();
+				for (ExecutorService dispatcher : EVENT_DISPATCHERS) {
+					dispatcher.shutdown();
+				}
 				LOGGER.info("zookeeper client is closed");
 			} catch (Exception e) {
 				e.printStackTrace();
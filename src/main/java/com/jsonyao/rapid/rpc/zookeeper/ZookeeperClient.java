@@ -91,6 +91,20 @@ public interface ZookeeperClient {
 	 */
 	void listener4ChildrenPath(final String parent, final NodeListener listener) throws Exception;
 
+	/**
+	 * listener4TreePath 监听给定节点下指定深度内的所有子孙节点: 整棵子树只用一个缓存, 适合服务数目很多的注册中心
+	 * @param root			/parent
+	 * @param maxDepth		监听的最大深度, root本身为0
+	 * @param listener		/aaa, /aaa/ccc, /bbb
+	 * @throws Exception
+	 * 
+	 *  	/parent   ==> 0
+	 *  		/aaa	==> 1
+	 *  			/ccc	==> 2
+	 *  		/bbb	==> 1
+	 */
+	void listener4TreePath(final String root, int maxDepth, final NodeListener listener) throws Exception;
+
 	/**
 	 * close 关闭客户端与服务端的连接
 	 */
@@ -0,0 +1,133 @@
+package com.jsonyao.rapid.rpc.client;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 基于Netty实现RPC框架: 熔断器状态转换, 定时器由测试手动触发
+ */
+public class RpcCircuitBreakerTest {
+
+    private CircuitBreakerOptions options;
+    private Timer timer;
+    private RpcCircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        options = new CircuitBreakerOptions();
+        options.setMinRequests(4);
+        options.setErrorRateThreshold(0.5);
+        options.setEjectionMillis(1000);
+        timer = mock(Timer.class);
+        breaker = new RpcCircuitBreaker(options, timer);
+    }
+
+    @Test
+    public void errorRateOpensBreaker() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onError(0);
+        }
+        assertEquals(RpcCircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onError(0);
+        assertEquals(RpcCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isAvailable());
+        assertFalse(breaker.acquire());
+    }
+
+    @Test
+    public void halfOpenAdmitsExactlyOneConcurrentProbe() throws Exception {
+        halfOpen();
+
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger acquired = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                        if(breaker.acquire()) {
+                            acquired.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        // 计数不完整时断言失败
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, acquired.get());
+        assertFalse(breaker.isAvailable());
+    }
+
+    @Test
+    public void cancelledProbeReturnsPermit() {
+        halfOpen();
+        assertTrue(breaker.acquire());
+        assertFalse(breaker.acquire());
+
+        breaker.onCancelled(0);
+
+        assertEquals(RpcCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.acquire());
+    }
+
+    @Test
+    public void successfulProbeClosesBreaker() {
+        halfOpen();
+        assertTrue(breaker.acquire());
+
+        breaker.onSuccess(0);
+
+        assertEquals(RpcCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.acquire());
+        assertTrue(breaker.acquire());
+    }
+
+    @Test
+    public void failedProbeReopensWithLongerEjection() {
+        halfOpen();
+        assertTrue(breaker.acquire());
+
+        breaker.onError(0);
+
+        assertEquals(RpcCircuitBreaker.State.OPEN, breaker.getState());
+        verify(timer).newTimeout(any(TimerTask.class), eq(2000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 摘除后手动触发定时任务, 进入HALF_OPEN
+     */
+    private void halfOpen() {
+        assertTrue(breaker.eject("test"));
+        ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer).newTimeout(task.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        try {
+            task.getValue().run(mock(Timeout.class));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        assertEquals(RpcCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.isAvailable());
+    }
+}
@@ -0,0 +1,120 @@
+package com.jsonyao.rapid.rpc.client;
+
+import com.jsonyao.rapid.rpc.codec.RpcMessage;
+import com.jsonyao.rapid.rpc.codec.RpcProtocol;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+import com.jsonyao.rapid.rpc.transport.RpcWriteMetrics;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 基于Netty实现RPC框架: Client端未完成请求表的超时清理、连接关闭和取消
+ */
+public class RpcClientHandlerTest {
+
+    private RpcClientOptions options;
+    private RpcClientMetrics clientMetrics;
+    private RpcClientHandler handler;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        options = new RpcClientOptions();
+        options.setWriteCoalescing(false);
+        clientMetrics = new RpcClientMetrics();
+        handler = new RpcClientHandler(options, new RpcWriteMetrics(), clientMetrics);
+        channel = new EmbeddedChannel(handler);
+        // 丢弃握手请求
+        channel.outboundMessages().clear();
+    }
+
+    @Test
+    public void timeoutEvictsPendingRequest() throws Exception {
+        // 超时在定时器线程上触发, 不向EmbeddedChannel写取消帧
+        options.setCancelPropagation(false);
+        RpcFuture future = handler.sendRequest(request(), 50, RpcFuture.DIRECT_EXECUTOR);
+        assertEquals(1, handler.getPendingCount());
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RpcTimeoutException);
+        }
+        assertEquals(0, handler.getPendingCount());
+    }
+
+    @Test
+    public void channelInactiveFailsAllPendingRequests() throws Exception {
+        RpcFuture[] futures = new RpcFuture[3];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = handler.sendRequest(request(), 60000, RpcFuture.DIRECT_EXECUTOR);
+        }
+        assertEquals(3, handler.getPendingCount());
+
+        channel.close();
+
+        assertEquals(0, handler.getPendingCount());
+        for (RpcFuture future : futures) {
+            assertTrue(future.isCompletedExceptionally());
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RpcException);
+            }
+        }
+    }
+
+    @Test
+    public void sendOnClosedChannelFailsImmediately() {
+        channel.close();
+        RpcFuture future = handler.sendRequest(request(), 60000, RpcFuture.DIRECT_EXECUTOR);
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, handler.getPendingCount());
+    }
+
+    @Test
+    public void cancelRemovesPendingRequestAndSendsCancelFrame() {
+        RpcFuture future = handler.sendRequest(request(), 60000, RpcFuture.DIRECT_EXECUTOR);
+        channel.outboundMessages().clear();
+
+        assertTrue(future.cancel(true));
+
+        assertEquals(0, handler.getPendingCount());
+        assertEquals(1, clientMetrics.getCancelled());
+        RpcMessage cancel = channel.readOutbound();
+        assertEquals(RpcProtocol.TYPE_CANCEL, cancel.getType());
+        assertEquals(future.getRequest().getRequestId(), cancel.getRequestId());
+        assertEquals(RpcProtocol.CANCEL_MAY_INTERRUPT, cancel.getStatus());
+    }
+
+    @Test
+    public void timedGetCancelsTheRequest() throws Exception {
+        RpcFuture future = handler.sendRequest(request(), 60000, RpcFuture.DIRECT_EXECUTOR);
+        channel.outboundMessages().clear();
+
+        try {
+            future.get(20, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (RpcTimeoutException e) {
+            // 调用方放弃等待
+        }
+        assertTrue(future.isCancelled());
+        assertEquals(0, handler.getPendingCount());
+        assertEquals(1, clientMetrics.getCancelFrames());
+    }
+
+    private static RpcRequest request() {
+        RpcRequest request = new RpcRequest();
+        request.setClassName("com.jsonyao.rapid.rpc.HelloService");
+        request.setMethodName("hello");
+        return request;
+    }
+}
@@ -0,0 +1,120 @@
+package com.jsonyao.rapid.rpc.client.cluster;
+
+import com.jsonyao.rapid.rpc.client.RpcBudget;
+import com.jsonyao.rapid.rpc.client.RpcClientHandler;
+import com.jsonyao.rapid.rpc.client.RpcClientOptions;
+import com.jsonyao.rapid.rpc.client.RpcConnectManager;
+import com.jsonyao.rapid.rpc.client.RpcFuture;
+import com.jsonyao.rapid.rpc.client.RpcOverloadedException;
+import com.jsonyao.rapid.rpc.client.RpcTimeoutException;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * 基于Netty实现RPC框架: 快速失败的过载重试和额外请求预算
+ */
+public class FailfastClusterInvokerTest {
+
+    private RpcClientOptions options;
+    private RpcConnectManager connectManager;
+    private RpcClientHandler primary;
+    private RpcClientHandler secondary;
+    private RpcFuture primaryFuture;
+    private RpcFuture secondaryFuture;
+    private RpcRequest request;
+
+    @Before
+    public void setUp() {
+        request = new RpcRequest();
+        request.setClassName("com.jsonyao.rapid.rpc.HelloService");
+        request.setMethodName("hello");
+        primaryFuture = new RpcFuture(request, RpcFuture.DIRECT_EXECUTOR);
+        secondaryFuture = new RpcFuture(request, RpcFuture.DIRECT_EXECUTOR);
+        primary = handler(8765, primaryFuture);
+        secondary = handler(8766, secondaryFuture);
+
+        options = new RpcClientOptions();
+        connectManager = mock(RpcConnectManager.class);
+        when(connectManager.getOptions()).thenReturn(options);
+        when(connectManager.chooseHandler(any(RpcRequest.class))).thenReturn(primary);
+        when(connectManager.chooseHandler(any(RpcRequest.class), anyCollection())).thenReturn(secondary);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void overloadedRequestIsRetriedOnAnotherAddress() throws Exception {
+        when(connectManager.getBudget()).thenReturn(new RpcBudget(10, 10, 10000));
+        FailfastClusterInvoker invoker = new FailfastClusterInvoker(connectManager);
+        RpcFuture result = invoker.invoke(request, 1000, RpcFuture.DIRECT_EXECUTOR);
+        primaryFuture.fail(new RpcOverloadedException("overloaded"));
+        secondaryFuture.complete("ok");
+
+        assertEquals("ok", result.get());
+        ArgumentCaptor<Collection> excluded = ArgumentCaptor.forClass(Collection.class);
+        verify(connectManager).chooseHandler(any(RpcRequest.class), excluded.capture());
+        assertTrue(excluded.getValue().contains(primary.getRemotePeer()));
+        assertEquals(1, invoker.getExtraRequests());
+    }
+
+    @Test
+    public void exhaustedBudgetSkipsChoosingARetryTarget() throws Exception {
+        when(connectManager.getBudget()).thenReturn(new RpcBudget(0, 0, 10000));
+        FailfastClusterInvoker invoker = new FailfastClusterInvoker(connectManager);
+        RpcFuture result = invoker.invoke(request, 1000, RpcFuture.DIRECT_EXECUTOR);
+        primaryFuture.fail(new RpcOverloadedException("overloaded"));
+
+        try {
+            result.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RpcOverloadedException);
+        }
+        // 没有预算时不选择: 选择会占用半开连接的探测名额
+        verify(connectManager, never()).chooseHandler(any(RpcRequest.class), anyCollection());
+        assertEquals(1, invoker.getBudgetExhausted());
+    }
+
+    @Test
+    public void otherErrorsAreNotRetried() throws Exception {
+        when(connectManager.getBudget()).thenReturn(new RpcBudget(10, 10, 10000));
+        RpcFuture result = new FailfastClusterInvoker(connectManager).invoke(request, 1000, RpcFuture.DIRECT_EXECUTOR);
+        primaryFuture.fail(new RpcTimeoutException("timeout"));
+
+        try {
+            result.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RpcTimeoutException);
+        }
+        verify(connectManager, never()).chooseHandler(any(RpcRequest.class), anyCollection());
+    }
+
+    @Test
+    public void retryDisabledReturnsTheConnectionFuture() {
+        options.setRetryOnOverloaded(false);
+        when(connectManager.getBudget()).thenReturn(new RpcBudget(10, 10, 10000));
+        RpcFuture result = new FailfastClusterInvoker(connectManager).invoke(request, 1000, RpcFuture.DIRECT_EXECUTOR);
+        assertSame(primaryFuture, result);
+    }
+
+    private static RpcClientHandler handler(int port, RpcFuture future) {
+        RpcClientHandler handler = mock(RpcClientHandler.class);
+        SocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        when(handler.getRemotePeer()).thenReturn(address);
+        when(handler.sendRequest(any(RpcRequest.class), anyLong(), any())).thenReturn(future);
+        return handler;
+    }
+}
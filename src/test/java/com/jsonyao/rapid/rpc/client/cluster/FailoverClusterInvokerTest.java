@@ -0,0 +1,121 @@
+package com.jsonyao.rapid.rpc.client.cluster;
+
+import com.jsonyao.rapid.rpc.client.RpcBudget;
+import com.jsonyao.rapid.rpc.client.RpcClientHandler;
+import com.jsonyao.rapid.rpc.client.RpcConnectManager;
+import com.jsonyao.rapid.rpc.client.RpcFuture;
+import com.jsonyao.rapid.rpc.client.RpcTimeoutException;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+import com.jsonyao.rapid.rpc.transport.RpcContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 基于Netty实现RPC框架: 失败转移受上游截止时间约束
+ */
+public class FailoverClusterInvokerTest {
+
+    private RpcConnectManager connectManager;
+    private RpcClientHandler primary;
+    private RpcClientHandler secondary;
+    private RpcFuture primaryFuture;
+    private RpcFuture secondaryFuture;
+    private RpcRequest request;
+
+    @Before
+    public void setUp() {
+        request = new RpcRequest();
+        request.setClassName("com.jsonyao.rapid.rpc.HelloService");
+        request.setMethodName("hello");
+        primaryFuture = new RpcFuture(request, RpcFuture.DIRECT_EXECUTOR);
+        secondaryFuture = new RpcFuture(request, RpcFuture.DIRECT_EXECUTOR);
+        primary = handler(8765, primaryFuture);
+        secondary = handler(8766, secondaryFuture);
+
+        connectManager = mock(RpcConnectManager.class);
+        when(connectManager.getBudget()).thenReturn(new RpcBudget(10, 10, 10000));
+        when(connectManager.chooseHandler(any(RpcRequest.class))).thenReturn(primary);
+        when(connectManager.chooseHandler(any(RpcRequest.class), anyCollection())).thenReturn(secondary);
+    }
+
+    @After
+    public void tearDown() {
+        RpcContext.getContext().clear();
+    }
+
+    @Test
+    public void retryUsesTheFullTimeoutWithoutDeadline() throws Exception {
+        RpcFuture result = new FailoverClusterInvoker(connectManager, 2).invoke(request, 1000, RpcFuture.DIRECT_EXECUTOR);
+        primaryFuture.fail(new RpcTimeoutException("timeout"));
+        secondaryFuture.complete("ok");
+
+        assertEquals("ok", result.get());
+        verify(secondary).sendRequest(any(RpcRequest.class), eq(1000L), any());
+    }
+
+    @Test
+    public void retryTimeoutIsBoundedByTheRemainingDeadline() throws Exception {
+        RpcContext.getContext().setDeadlineNanos(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300));
+        RpcFuture result = new FailoverClusterInvoker(connectManager, 2).invoke(request, 1000, RpcFuture.DIRECT_EXECUTOR);
+        primaryFuture.fail(new RpcTimeoutException("timeout"));
+        secondaryFuture.complete("ok");
+
+        assertEquals("ok", result.get());
+        ArgumentCaptor<Long> primaryTimeout = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<Long> secondaryTimeout = ArgumentCaptor.forClass(Long.class);
+        verify(primary).sendRequest(any(RpcRequest.class), primaryTimeout.capture(), any());
+        verify(secondary).sendRequest(any(RpcRequest.class), secondaryTimeout.capture(), any());
+        assertTrue(primaryTimeout.getValue() <= 300);
+        assertTrue(secondaryTimeout.getValue() <= primaryTimeout.getValue());
+    }
+
+    @Test
+    public void noRetryOnceTheDeadlineHasPassed() throws Exception {
+        RpcContext.getContext().setDeadlineNanos(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20));
+        RpcFuture result = new FailoverClusterInvoker(connectManager, 2).invoke(request, 1000, RpcFuture.DIRECT_EXECUTOR);
+        Thread.sleep(50);
+        primaryFuture.fail(new RpcTimeoutException("timeout"));
+
+        try {
+            result.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RpcTimeoutException);
+        }
+        verify(connectManager, never()).chooseHandler(any(RpcRequest.class), anyCollection());
+    }
+
+    @Test
+    public void serverErrorIsNotRetried() throws Exception {
+        RpcFuture result = new FailoverClusterInvoker(connectManager, 2).invoke(request, 1000, RpcFuture.DIRECT_EXECUTOR);
+        primaryFuture.fail(new IllegalArgumentException("boom"));
+
+        try {
+            result.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        verify(connectManager, never()).chooseHandler(any(RpcRequest.class), anyCollection());
+    }
+
+    private static RpcClientHandler handler(int port, RpcFuture future) {
+        RpcClientHandler handler = mock(RpcClientHandler.class);
+        when(handler.getRemotePeer()).thenReturn(new InetSocketAddress("127.0.0.1", port));
+        when(handler.sendRequest(any(RpcRequest.class), anyLong(), any())).thenReturn(future);
+        return handler;
+    }
+}
@@ -0,0 +1,103 @@
+package com.jsonyao.rapid.rpc.client.loadbalance;
+
+import com.jsonyao.rapid.rpc.client.RpcEndpoint;
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 基于Netty实现RPC框架: 一致性哈希在地址变化时的键迁移
+ */
+public class ConsistentHashLoadBalancerTest {
+
+    private static final int KEYS = 10000;
+
+    @Test
+    public void removingAnAddressOnlyMovesItsKeys() {
+        RpcEndpoint[] endpoints = endpoints(5);
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        Map<Integer, SocketAddress> before = route(loadBalancer, endpoints);
+
+        RpcEndpoint removed = endpoints[2];
+        RpcEndpoint[] remaining = {endpoints[0], endpoints[1], endpoints[3], endpoints[4]};
+        Map<Integer, SocketAddress> after = route(loadBalancer, remaining);
+
+        int moved = 0;
+        for (int key = 0; key < KEYS; key++) {
+            if(before.get(key).equals(removed.getAddress())) {
+                assertNotEquals(removed.getAddress(), after.get(key));
+                moved++;
+            } else {
+                assertEquals(before.get(key), after.get(key));
+            }
+        }
+        // 约1/N的键属于被移除的地址
+        assertTrue(moved > KEYS / 10 && moved < KEYS * 3 / 10);
+    }
+
+    @Test
+    public void addingTheAddressBackRestoresTheOriginalRouting() {
+        RpcEndpoint[] endpoints = endpoints(5);
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        Map<Integer, SocketAddress> before = route(loadBalancer, endpoints);
+
+        route(loadBalancer, new RpcEndpoint[]{endpoints[0], endpoints[1], endpoints[3], endpoints[4]});
+        Map<Integer, SocketAddress> restored = route(loadBalancer, endpoints.clone());
+
+        assertEquals(before, restored);
+        assertEquals(before, route(new ConsistentHashLoadBalancer(), endpoints.clone()));
+    }
+
+    @Test
+    public void excludedAddressFallsThroughToTheNextOwner() {
+        RpcEndpoint[] endpoints = endpoints(3);
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        for (int key = 0; key < 100; key++) {
+            RpcEndpoint owner = loadBalancer.select(endpoints, request(key));
+            RpcEndpoint next = loadBalancer.select(endpoints, request(key), Collections.singleton(owner.getAddress()));
+            assertNotNull(next);
+            assertNotEquals(owner.getAddress(), next.getAddress());
+        }
+    }
+
+    @Test
+    public void emptySnapshotSelectsNothing() {
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        RpcEndpoint[] empty = new RpcEndpoint[0];
+        assertNull(loadBalancer.select(empty, request(1)));
+        assertNull(loadBalancer.select(empty, request(1), Collections.<SocketAddress>emptySet()));
+    }
+
+    private static Map<Integer, SocketAddress> route(ConsistentHashLoadBalancer loadBalancer, RpcEndpoint[] endpoints) {
+        Map<Integer, SocketAddress> routes = new HashMap<>();
+        for (int key = 0; key < KEYS; key++) {
+            routes.put(key, loadBalancer.select(endpoints, request(key)).getAddress());
+        }
+        return routes;
+    }
+
+    private static RpcEndpoint[] endpoints(int size) {
+        RpcEndpoint[] endpoints = new RpcEndpoint[size];
+        for (int i = 0; i < size; i++) {
+            endpoints[i] = mock(RpcEndpoint.class);
+            when(endpoints[i].getAddress()).thenReturn(new InetSocketAddress("127.0.0.1", 8765 + i));
+            when(endpoints[i].getWeight()).thenReturn(1);
+        }
+        return endpoints;
+    }
+
+    private static RpcRequest request(int key) {
+        RpcRequest request = new RpcRequest();
+        request.setParameters(new Object[]{"user-" + key});
+        return request;
+    }
+}
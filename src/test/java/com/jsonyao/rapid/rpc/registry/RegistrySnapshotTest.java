@@ -0,0 +1,97 @@
+package com.jsonyao.rapid.rpc.registry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * 基于Netty实现RPC框架: 服务提供者视图本地快照的写出与加载
+ */
+public class RegistrySnapshotTest {
+
+    private static final String HELLO = "com.jsonyao.rapid.rpc.HelloService:1.0.0";
+    private static final String USER = "com.jsonyao.rapid.rpc.UserService:1.0.0";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "snapshot/registry.json");
+    }
+
+    @Test
+    public void missingSnapshotLoadsEmpty() {
+        RegistrySnapshot snapshot = new RegistrySnapshot(file, new ConcurrentHashMap<String, ProviderDirectory>());
+        assertTrue(snapshot.load().isEmpty());
+    }
+
+    @Test
+    public void writtenSnapshotLoadsBack() throws Exception {
+        Map<String, ProviderDirectory> directories = new ConcurrentHashMap<>();
+        ProviderDirectory hello = new ProviderDirectory();
+        hello.put("127.0.0.1:8765", 1);
+        hello.put("127.0.0.1:8766", 3);
+        directories.put(HELLO, hello);
+
+        new RegistrySnapshot(file, directories).changed();
+
+        Map<String, Map<String, Integer>> expected = new HashMap<>();
+        expected.put(HELLO, hello.getWeights());
+        assertEquals(expected, awaitSnapshot(expected));
+    }
+
+    @Test
+    public void unsubscribedServicesSurviveARewrite() throws Exception {
+        Map<String, ProviderDirectory> first = new ConcurrentHashMap<>();
+        ProviderDirectory hello = new ProviderDirectory();
+        hello.put("127.0.0.1:8765", 1);
+        first.put(HELLO, hello);
+        ProviderDirectory user = new ProviderDirectory();
+        user.put("127.0.0.1:8767", 2);
+        first.put(USER, user);
+        new RegistrySnapshot(file, first).changed();
+        Map<String, Map<String, Integer>> expected = new HashMap<>();
+        expected.put(HELLO, hello.getWeights());
+        expected.put(USER, user.getWeights());
+        awaitSnapshot(expected);
+
+        // 下一次运行只引用了HelloService, 并且它的提供者发生了变化
+        Map<String, ProviderDirectory> second = new ConcurrentHashMap<>();
+        RegistrySnapshot snapshot = new RegistrySnapshot(file, second);
+        assertEquals(expected, snapshot.load());
+        ProviderDirectory changed = new ProviderDirectory();
+        changed.put("127.0.0.1:8768", 1);
+        second.put(HELLO, changed);
+        snapshot.changed();
+
+        expected.put(HELLO, changed.getWeights());
+        assertEquals(expected, awaitSnapshot(expected));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    /**
+     * 快照异步写出: 等待文件内容符合预期, 超时后返回最后一次读到的内容
+     */
+    private Map<String, Map<String, Integer>> awaitSnapshot(Map<String, Map<String, Integer>> expected) throws InterruptedException {
+        Map<String, Map<String, Integer>> loaded = null;
+        for (int i = 0; i < 100; i++) {
+            loaded = new RegistrySnapshot(file, new ConcurrentHashMap<String, ProviderDirectory>()).load();
+            if(expected.equals(loaded)) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        return loaded;
+    }
+}
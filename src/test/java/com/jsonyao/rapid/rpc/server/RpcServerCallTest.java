@@ -0,0 +1,90 @@
+package com.jsonyao.rapid.rpc.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * 基于Netty实现RPC框架: Server端请求取消状态机
+ */
+public class RpcServerCallTest {
+
+    @Test
+    public void cancelWhileQueuedSkipsExecution() {
+        RpcServerCall call = new RpcServerCall();
+        assertEquals(RpcServerCall.CANCEL_QUEUED, call.cancel(false));
+        assertTrue(call.isCancelled());
+        assertFalse(call.start());
+    }
+
+    @Test
+    public void finishedCallCannotBeCancelled() {
+        RpcServerCall call = new RpcServerCall();
+        assertTrue(call.start());
+        assertTrue(call.finish());
+        assertEquals(RpcServerCall.CANCEL_NONE, call.cancel(true));
+        assertFalse(call.isCancelled());
+    }
+
+    @Test
+    public void cancelWhileRunningSuppressesResponse() {
+        RpcServerCall call = new RpcServerCall();
+        assertTrue(call.start());
+        // 允许中断但服务没有开启interruptOnCancel: 只标记取消, 不中断
+        assertEquals(RpcServerCall.CANCEL_RUNNING, call.cancel(true));
+        assertTrue(call.isCancelled());
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertFalse(call.finish());
+    }
+
+    @Test
+    public void cancelWithoutMayInterruptDoesNotInterrupt() {
+        RpcServerCall call = new RpcServerCall();
+        call.setInterruptible(true);
+        assertTrue(call.start());
+        assertEquals(RpcServerCall.CANCEL_RUNNING, call.cancel(false));
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertFalse(call.finish());
+    }
+
+    @Test
+    public void interruptIsClearedWhenRunnerFinishes() throws Exception {
+        final RpcServerCall call = new RpcServerCall();
+        call.setInterruptible(true);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean sawInterrupt = new AtomicBoolean();
+        final AtomicBoolean respond = new AtomicBoolean(true);
+        final AtomicBoolean leaked = new AtomicBoolean(true);
+        Thread runner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                call.start();
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    sawInterrupt.set(true);
+                    // 服务方法吞掉异常后恢复中断标记, finish仍然需要把它清除
+                    Thread.currentThread().interrupt();
+                }
+                respond.set(call.finish());
+                leaked.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        runner.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertEquals(RpcServerCall.CANCEL_INTERRUPTED, call.cancel(true));
+        runner.join(5000);
+
+        assertFalse(runner.isAlive());
+        assertTrue(sawInterrupt.get());
+        assertFalse(respond.get());
+        assertFalse(leaked.get());
+        assertEquals(RpcServerCall.CANCEL_NONE, call.cancel(true));
+    }
+}
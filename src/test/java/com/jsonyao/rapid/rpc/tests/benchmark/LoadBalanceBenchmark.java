@@ -0,0 +1,138 @@
+package com.jsonyao.rapid.rpc.tests.benchmark;
+
+import com.jsonyao.rapid.rpc.client.RpcClient;
+import com.jsonyao.rapid.rpc.client.RpcClientOptions;
+import com.jsonyao.rapid.rpc.client.loadbalance.LoadBalanceType;
+import com.jsonyao.rapid.rpc.config.provider.ProviderConfig;
+import com.jsonyao.rapid.rpc.server.RpcServer;
+import com.jsonyao.rapid.rpc.tests.consumer.HelloService;
+import com.jsonyao.rapid.rpc.tests.consumer.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对比三种负载均衡策略在异构的本地服务提供者之间的流量分布:
+ *      provider-0: 权重3, 延迟1ms; provider-1: 权重1, 延迟1ms; provider-2: 权重1, 延迟10ms(慢节点)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Threads(32)
+@Fork(1)
+public class LoadBalanceBenchmark {
+
+	private static final int[] PORTS = {18771, 18772, 18773};
+	private static final int[] WEIGHTS = {3, 1, 1};
+	private static final int[] DELAYS = {1, 1, 10};
+
+	@Param({"ROUND_ROBIN", "LEAST_ACTIVE", "P2C_EWMA"})
+	private LoadBalanceType loadBalance;
+
+	private RpcServer[] servers;
+	private DelayedHelloService[] services;
+	private RpcClient client;
+	private HelloService helloService;
+	private User user;
+
+	@Setup
+	public void setup() throws Exception {
+		servers = new RpcServer[PORTS.length];
+		services = new DelayedHelloService[PORTS.length];
+		// 注册中心按权重重复地址
+		List<String> urls = new ArrayList<>();
+		for (int i = 0; i < PORTS.length; i++) {
+			servers[i] = new RpcServer("127.0.0.1:" + PORTS[i]);
+			services[i] = new DelayedHelloService(DELAYS[i]);
+			ProviderConfig providerConfig = new ProviderConfig();
+			providerConfig.setInterfaceName(HelloService.class.getName());
+			providerConfig.setRef(services[i]);
+			servers[i].registerProcessor(providerConfig);
+			for (int w = 0; w < WEIGHTS[i]; w++) {
+				urls.add("127.0.0.1:" + PORTS[i]);
+			}
+		}
+
+		RpcClientOptions options = new RpcClientOptions();
+		options.setLoadBalance(loadBalance);
+		client = new RpcClient();
+		client.setOptions(options);
+		helloService = client.initClient(urls, 3000, HelloService.class);
+		user = new User("001", "zhang3");
+		// 等待所有地址的连接建立完成
+		Thread.sleep(1000);
+	}
+
+	@Setup(Level.Iteration)
+	public void resetCounters() {
+		for (DelayedHelloService service : services) {
+			service.count.set(0);
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void printSkew() {
+		long total = 0;
+		for (DelayedHelloService service : services) {
+			total += service.count.get();
+		}
+		StringBuilder sb = new StringBuilder(loadBalance + " traffic share:");
+		for (int i = 0; i < services.length; i++) {
+			sb.append(String.format(" provider-%d(w=%d, %dms)=%.1f%%", i, WEIGHTS[i], DELAYS[i], total == 0 ? 0 : services[i].count.get() * 100.0 / total));
+		}
+		System.out.println(sb);
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (RpcServer server : servers) {
+			server.close();
+		}
+	}
+
+	@Benchmark
+	public String invoke() {
+		return helloService.hello(user);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(LoadBalanceBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	/**
+	 * 固定延迟的服务实现, 统计各自收到的请求数
+	 */
+	public static class DelayedHelloService implements HelloService {
+
+		private final long delayMillis;
+		private final AtomicLong count = new AtomicLong();
+
+		public DelayedHelloService(long delayMillis) {
+			this.delayMillis = delayMillis;
+		}
+
+		@Override
+		public String hello(String name) {
+			return hello(new User(null, name));
+		}
+
+		@Override
+		public String hello(User user) {
+			count.incrementAndGet();
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "hello! " + user.getName();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package com.jsonyao.rapid.rpc.tests.benchmark;
+
+import com.jsonyao.rapid.rpc.registry.SubscribeMode;
+import com.jsonyao.rapid.rpc.zookeeper.ChangedEvent;
+import com.jsonyao.rapid.rpc.zookeeper.CuratorImpl;
+import com.jsonyao.rapid.rpc.zookeeper.NodeListener;
+import com.jsonyao.rapid.rpc.zookeeper.ZookeeperClient;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比两种全量订阅方式在大规模注册中心上的服务发现耗时: 本地嵌入式ZooKeeper, 5000个服务 * 每个服务20个服务提供者
+ *      discover: 从开始监听到收到全部服务提供者的耗时
+ *      burst: 每个服务各有一个服务提供者权重变化, 收到全部变更的耗时
+ *      事件处理模拟Client端同步服务提供者的开销, 按服务路径分区到eventThreads个线程上
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class RegistryWatchBenchmark {
+
+	private static final int ZK_PORT = 12281;
+	private static final int SERVICES = 5000;
+	private static final int PROVIDERS = 20;
+	private static final String ROOT_PATH = "/rapid-rpc";
+
+	/**
+	 * 每个事件模拟的处理开销
+	 */
+	private static final long WORK_TOKENS = 1000;
+
+	@Param({"EAGER", "TREE"})
+	private SubscribeMode mode;
+
+	@Param({"1", "8"})
+	private int eventThreads;
+
+	private ServerCnxnFactory serverCnxnFactory;
+	private ZookeeperClient writer;
+
+	private ZookeeperClient reader;
+	private CountingListener listener;
+	private int version;
+
+	@Setup(Level.Trial)
+	public void startZookeeper() throws Exception {
+		File dir = Files.createTempDirectory("rapid-rpc-zk").toFile();
+		ZooKeeperServer zooKeeperServer = new ZooKeeperServer(dir, dir, 2000);
+		serverCnxnFactory = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", ZK_PORT), 1000);
+		serverCnxnFactory.startup(zooKeeperServer);
+
+		writer = new CuratorImpl("127.0.0.1:" + ZK_PORT, 30000);
+		writer.addPersistentNode(ROOT_PATH, "rapid-rpc-1.0.0");
+		// 异步批量创建: 服务结点和providers结点先建好, 再建服务提供者结点
+		final CuratorFramework client = writer.getClient();
+		createAll(client, new PathVisitor() {
+			public String path(int service, int provider) {
+				return provider == 0 ? servicePath(service) : null;
+			}
+		});
+		createAll(client, new PathVisitor() {
+			public String path(int service, int provider) {
+				return provider == 0 ? servicePath(service) + "/providers" : null;
+			}
+		});
+		createAll(client, new PathVisitor() {
+			public String path(int service, int provider) {
+				return providerPath(service, provider);
+			}
+		});
+	}
+
+	@Setup(Level.Iteration)
+	public void startReader() {
+		reader = new CuratorImpl("127.0.0.1:" + ZK_PORT, 30000, eventThreads);
+		listener = new CountingListener(mode);
+	}
+
+	@TearDown(Level.Iteration)
+	public void stopReader() {
+		reader.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void stopZookeeper() {
+		writer.close();
+		serverCnxnFactory.shutdown();
+	}
+
+	@Benchmark
+	public long discover() throws Exception {
+		watch();
+		listener.added.await(5, TimeUnit.MINUTES);
+		return listener.added.getCount();
+	}
+
+	@Benchmark
+	public long burst(BurstState burstState) throws Exception {
+		// 每个服务的第一个服务提供者更新权重
+		String data = "{\"weight\":\"" + (++version % 10 + 1) + "\"}";
+		for (int service = 0; service < SERVICES; service++) {
+			writer.getClient().setData().inBackground().forPath(providerPath(service, 0), data.getBytes(Charset.defaultCharset()));
+		}
+		listener.updated.await(5, TimeUnit.MINUTES);
+		return listener.updated.getCount();
+	}
+
+	/**
+	 * burst之前先完成服务发现, 不计入耗时
+	 */
+	@State(Scope.Benchmark)
+	public static class BurstState {
+
+		@Setup(Level.Iteration)
+		public void discover(RegistryWatchBenchmark benchmark) throws Exception {
+			benchmark.watch();
+			benchmark.listener.added.await(5, TimeUnit.MINUTES);
+		}
+	}
+
+	private void watch() throws Exception {
+		if(mode == SubscribeMode.TREE) {
+			reader.listener4TreePath(ROOT_PATH, 3, listener);
+		} else {
+			reader.listener4ChildrenPath(ROOT_PATH, listener);
+		}
+	}
+
+	private static String servicePath(int service) {
+		return ROOT_PATH + "/com.jsonyao.rapid.rpc.tests.Service" + service + ":1.0.0";
+	}
+
+	private static String providerPath(int service, int provider) {
+		return servicePath(service) + "/providers/10.0." + (provider / 250) + "." + (provider % 250 + 1) + ":8765";
+	}
+
+	private interface PathVisitor {
+		String path(int service, int provider);
+	}
+
+	private static void createAll(CuratorFramework client, PathVisitor visitor) throws Exception {
+		final CountDownLatch latch = new CountDownLatch(SERVICES * PROVIDERS);
+		BackgroundCallback callback = new BackgroundCallback() {
+			public void processResult(CuratorFramework client, CuratorEvent event) {
+				latch.countDown();
+			}
+		};
+		byte[] data = "{\"weight\":\"1\"}".getBytes(Charset.defaultCharset());
+		for (int service = 0; service < SERVICES; service++) {
+			for (int provider = 0; provider < PROVIDERS; provider++) {
+				String path = visitor.path(service, provider);
+				if(path == null) {
+					latch.countDown();
+				} else {
+					client.create().inBackground(callback).forPath(path, data);
+				}
+			}
+		}
+		latch.await(5, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * 与RpcRegistryConsumerService相同的路由: 全量订阅时逐级监听, 服务提供者事件计数
+	 */
+	private static class CountingListener implements NodeListener {
+
+		private final SubscribeMode mode;
+		private final CountDownLatch added = new CountDownLatch(SERVICES * PROVIDERS);
+		private final CountDownLatch updated = new CountDownLatch(SERVICES);
+
+		CountingListener(SubscribeMode mode) {
+			this.mode = mode;
+		}
+
+		public void nodeChanged(ZookeeperClient client, ChangedEvent event) throws Exception {
+			String[] pathArray = event.getPath().substring(1).split("/");
+			if(ChangedEvent.Type.CHILD_ADDED == event.getType() && mode == SubscribeMode.EAGER
+					&& (pathArray.length == 2 || pathArray.length == 3)) {
+				client.listener4ChildrenPath(event.getPath(), this);
+				return;
+			}
+			if(pathArray.length == 4 && "providers".equals(pathArray[2])) {
+				Blackhole.consumeCPU(WORK_TOKENS);
+				if(ChangedEvent.Type.CHILD_ADDED == event.getType()) {
+					added.countDown();
+				} else if(ChangedEvent.Type.CHILD_UPDATED == event.getType()) {
+					updated.countDown();
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(RegistryWatchBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
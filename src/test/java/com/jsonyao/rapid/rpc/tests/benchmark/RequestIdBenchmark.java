@@ -0,0 +1,46 @@
+package com.jsonyao.rapid.rpc.tests.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对比请求ID生成方式在64个调用线程并发下的开销: UUID(SecureRandom) 与 按连接单调递增的long
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(64)
+@Fork(1)
+public class RequestIdBenchmark {
+
+	// 与RpcClientHandler一致: 一个连接一个生成器
+	private final AtomicLong requestIdGenerator = new AtomicLong();
+
+	@Benchmark
+	public String uuidString() {
+		return UUID.randomUUID().toString();
+	}
+
+	@Benchmark
+	public long uuidLong() {
+		UUID uuid = UUID.randomUUID();
+		return uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+	}
+
+	@Benchmark
+	public long connectionSequence() {
+		return requestIdGenerator.incrementAndGet();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(RequestIdBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,92 @@
+package com.jsonyao.rapid.rpc.tests.benchmark;
+
+import com.jsonyao.rapid.rpc.codec.RpcRequest;
+import com.jsonyao.rapid.rpc.codec.Serialization;
+import com.jsonyao.rapid.rpc.tests.consumer.HelloService;
+import com.jsonyao.rapid.rpc.tests.consumer.User;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比Serialization: byte[]中转 与 直接读写池化ByteBuf 的编解码性能
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private RpcRequest request;
+
+	// 池化的直接内存, 与Netty编码器的分配方式一致
+	private ByteBuf buffer;
+
+	// 预先编码好的数据包, 用于反序列化对比
+	private byte[] data;
+	private ByteBuf frame;
+
+	@Setup
+	public void setup() {
+		request = new RpcRequest();
+		request.setClassName(HelloService.class.getName());
+		request.setMethodName("hello");
+		request.setParameterTypes(new Class<?>[]{User.class});
+		request.setParameters(new Object[]{new User("001", "zhang3")});
+
+		buffer = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
+		data = Serialization.serialize(request);
+		frame = PooledByteBufAllocator.DEFAULT.directBuffer(data.length);
+		frame.writeBytes(data);
+	}
+
+	@TearDown
+	public void tearDown() {
+		buffer.release();
+		frame.release();
+	}
+
+	@Benchmark
+	public ByteBuf serializeByteArray() {
+		buffer.clear();
+		byte[] bytes = Serialization.serialize(request);
+		buffer.writeInt(bytes.length);
+		buffer.writeBytes(bytes);
+		return buffer;
+	}
+
+	@Benchmark
+	public ByteBuf serializeByteBuf() {
+		buffer.clear();
+		buffer.writeInt(0);
+		Serialization.serialize(request, buffer);
+		buffer.setInt(0, buffer.writerIndex() - 4);
+		return buffer;
+	}
+
+	@Benchmark
+	public RpcRequest deserializeByteArray() {
+		frame.readerIndex(0);
+		byte[] bytes = new byte[frame.readableBytes()];
+		frame.readBytes(bytes);
+		return Serialization.deserialize(bytes, RpcRequest.class);
+	}
+
+	@Benchmark
+	public RpcRequest deserializeByteBuf() {
+		frame.readerIndex(0);
+		return Serialization.deserialize(frame, frame.readableBytes(), RpcRequest.class);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		// 加上 -prof gc 可以观察每次操作的内存分配(gc.alloc.rate.norm)
+		new Runner(new OptionsBuilder().include(SerializationBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,78 @@
+package com.jsonyao.rapid.rpc.tests.benchmark;
+
+import com.jsonyao.rapid.rpc.client.RpcClient;
+import com.jsonyao.rapid.rpc.client.RpcClientOptions;
+import com.jsonyao.rapid.rpc.config.provider.ProviderConfig;
+import com.jsonyao.rapid.rpc.server.RpcServer;
+import com.jsonyao.rapid.rpc.server.RpcServerOptions;
+import com.jsonyao.rapid.rpc.tests.consumer.HelloService;
+import com.jsonyao.rapid.rpc.tests.consumer.User;
+import com.jsonyao.rapid.rpc.tests.provider.HelloServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比合并写出开启/关闭时, 1个与64个并发调用方的同步调用延迟分布(p99), 以及每个请求的flush(writev)次数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriteCoalescingBenchmark {
+
+	@Param({"true", "false"})
+	private boolean writeCoalescing;
+
+	private RpcServer server;
+	private RpcClient client;
+	private HelloService helloService;
+	private User user;
+
+	@Setup
+	public void setup() throws Exception {
+		RpcServerOptions serverOptions = new RpcServerOptions();
+		serverOptions.setWriteCoalescing(writeCoalescing);
+		server = new RpcServer("127.0.0.1:18766", serverOptions);
+		ProviderConfig providerConfig = new ProviderConfig();
+		providerConfig.setInterfaceName(HelloService.class.getName());
+		providerConfig.setRef(new HelloServiceImpl());
+		server.registerProcessor(providerConfig);
+
+		RpcClientOptions clientOptions = new RpcClientOptions();
+		clientOptions.setWriteCoalescing(writeCoalescing);
+		client = new RpcClient();
+		client.setOptions(clientOptions);
+		client.initClient("127.0.0.1:18766", 3000);
+		helloService = client.invokeSync(HelloService.class);
+		user = new User("001", "zhang3");
+	}
+
+	@TearDown
+	public void tearDown() {
+		// 每个请求的系统调用数 ≈ flushes / frames
+		System.out.println("client " + client.getWriteMetrics() + ", server " + server.getWriteMetrics());
+		server.close();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String singleCaller() {
+		return helloService.hello(user);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public String concurrentCallers() {
+		return helloService.hello(user);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(WriteCoalescingBenchmark.class.getSimpleName()).build()).run();
+	}
+}